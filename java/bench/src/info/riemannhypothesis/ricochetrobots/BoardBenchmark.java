@@ -0,0 +1,106 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Move generation and parsing. Every invocation handles all robots of all
+ * {@link Fixtures#PUZZLES} seeded placements in all directions.
+ *
+ * @author Markus Schepke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({ "../boards/0.txt", "../boards/1.txt", "../boards/2.txt",
+            "../boards/3.txt", "../boards/4.txt", "../boards/4a.txt",
+            "../boards/5.txt" })
+    public String   boardFile;
+
+    private Fixtures fixtures;
+    private Point[][] configurations;
+    private BitBoard bitBoard;
+    private int[]    dests;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = new Fixtures(boardFile);
+        configurations = new Point[Fixtures.PUZZLES][];
+        for (int i = 0; i < Fixtures.PUZZLES; i++) {
+            configurations[i] = fixtures.configuration(i);
+        }
+        bitBoard = new BitBoard(fixtures.board);
+        dests = new int[Board.DIRECTIONS.length];
+    }
+
+    @Benchmark
+    public Board parse() throws IOException {
+        return new Board(new ByteArrayInputStream(fixtures.boardBytes));
+    }
+
+    @Benchmark
+    public void dest(Blackhole blackhole) {
+        Board board = fixtures.board;
+        for (Point[] configuration : configurations) {
+            for (Point p : configuration) {
+                for (int dir : Board.DIRECTIONS) {
+                    blackhole.consume(board.dest(p, dir, configuration));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void reachable(Blackhole blackhole) {
+        Board board = fixtures.board;
+        for (Point[] configuration : configurations) {
+            for (Point p : configuration) {
+                blackhole.consume(board.reachable(p, configuration));
+            }
+        }
+    }
+
+    @Benchmark
+    public int reachablePackedTable() {
+        return reachablePacked(fixtures.board);
+    }
+
+    @Benchmark
+    public int reachablePackedBitBoard() {
+        return reachablePacked(bitBoard);
+    }
+
+    private int reachablePacked(SlideEngine engine) {
+        int sum = 0;
+        for (long state : fixtures.states) {
+            for (int i = 0; i < Fixtures.ROBOTS; i++) {
+                int count = engine.reachable(i, state, fixtures.encoding,
+                        dests);
+                for (int d = 0; d < count; d++) {
+                    sum += dests[d];
+                }
+            }
+        }
+        return sum;
+    }
+}
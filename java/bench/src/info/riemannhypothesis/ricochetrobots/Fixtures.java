@@ -0,0 +1,83 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic puzzles for the benchmarks: a board file together with
+ * robot placements and targets drawn from a fixed seed, so every run
+ * measures exactly the same work.
+ *
+ * @author Markus Schepke
+ */
+class Fixtures {
+
+    static final long   SEED       = 20140813L;
+    static final int    ROBOTS     = 4;
+    static final int    PUZZLES    = 64;
+
+    final byte[]        boardBytes;
+    final Board         board;
+    final Robot[][]     robots;
+    final Point[]       targets;
+    final int[]         targetRobots;
+    final long[]        states;
+    final StateEncoding encoding;
+
+    Fixtures(String boardFile) throws IOException {
+        boardBytes = Files.readAllBytes(new File(boardFile).toPath());
+        board = new Board(new ByteArrayInputStream(boardBytes));
+        encoding = new StateEncoding(board, ROBOTS);
+
+        List<Point> candidates = new ArrayList<Point>(board.getTargets());
+        if (candidates.isEmpty()) {
+            candidates.add(new Point(board.getWidth() / 2,
+                    board.getHeight() / 2));
+        }
+        Collections.sort(candidates, new Comparator<Point>() {
+            @Override
+            public int compare(Point p, Point q) {
+                return p.y != q.y ? p.y - q.y : p.x - q.x;
+            }
+        });
+
+        Random random = new Random(SEED);
+        robots = new Robot[PUZZLES][];
+        targets = new Point[PUZZLES];
+        targetRobots = new int[PUZZLES];
+        states = new long[PUZZLES];
+        for (int i = 0; i < PUZZLES; i++) {
+            robots[i] = placement(random);
+            targets[i] = candidates.get(random.nextInt(candidates.size()));
+            targetRobots[i] = random.nextInt(ROBOTS);
+            states[i] = encoding.encode(robots[i]);
+        }
+    }
+
+    private Robot[] placement(Random random) {
+        Robot[] result = new Robot[ROBOTS];
+        Set<Point> used = new HashSet<Point>();
+        for (int i = 0; i < ROBOTS; i++) {
+            Point p;
+            do {
+                p = new Point(random.nextInt(board.getWidth()),
+                        random.nextInt(board.getHeight()));
+            } while (!used.add(p));
+            result[i] = new Robot(Integer.toString(i + 1), null, p);
+        }
+        return result;
+    }
+
+    Point[] configuration(int puzzle) {
+        return encoding.decode(states[puzzle]);
+    }
+}
@@ -0,0 +1,85 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The end move lookahead and complete searches over the seeded puzzles of
+ * {@link Fixtures}. Every invocation solves all puzzles of a board.
+ *
+ * @author Markus Schepke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+
+    @Param({ "../boards/1.txt", "../boards/2.txt", "../boards/3.txt",
+            "../boards/4.txt", "../boards/4a.txt", "../boards/5.txt" })
+    public String    boardFile;
+
+    @Param({ "BFS", "ASTAR" })
+    public String    searchMode;
+
+    private Fixtures fixtures;
+    private Solver[] lookahead;
+    private Point[][] blockers;
+    private SolverOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fixtures = new Fixtures(boardFile);
+        options = new SolverOptions().maxTime(10).searchMode(
+                SolverOptions.SearchMode.valueOf(searchMode));
+
+        // solvers which do not search at all, just to call endMoves on
+        lookahead = new Solver[Fixtures.PUZZLES];
+        blockers = new Point[Fixtures.PUZZLES][];
+        for (int i = 0; i < Fixtures.PUZZLES; i++) {
+            lookahead[i] = new Solver(fixtures.board, fixtures.robots[i],
+                    fixtures.targets[i], fixtures.targetRobots[i], 0);
+            Point[] configuration = fixtures.configuration(i);
+            blockers[i] = new Point[Fixtures.ROBOTS - 1];
+            for (int r = 0, c = 0; r < Fixtures.ROBOTS; r++) {
+                if (r != fixtures.targetRobots[i]) {
+                    blockers[i][c++] = configuration[r];
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void endMoves(Blackhole blackhole) {
+        for (int i = 0; i < Fixtures.PUZZLES; i++) {
+            blackhole.consume(lookahead[i].endMoves(blockers[i]));
+        }
+    }
+
+    @Benchmark
+    public int solve() {
+        int moves = 0;
+        for (int i = 0; i < Fixtures.PUZZLES; i++) {
+            moves += new Solver(fixtures.board, fixtures.robots[i],
+                    fixtures.targets[i], fixtures.targetRobots[i], options)
+                    .moves();
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,90 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs searches in the background and delivers their results through a
+ * {@link CompletableFuture}. Cancelling the future stops the search.
+ *
+ * In anytime mode the future completes at the latest when the time limit is
+ * up, with the best solution found until then, which is not necessarily
+ * optimal (see {@link SolverResult#isOptimal()}). This allows to answer
+ * within a fixed latency even when proving optimality would take longer.
+ *
+ * @author Markus Schepke
+ */
+public class AsyncSolver {
+
+    private final Executor executor;
+
+    public AsyncSolver() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor
+     *            the executor to run the searches on
+     */
+    public AsyncSolver(Executor executor) {
+        this.executor = executor;
+    }
+
+    public CompletableFuture<SolverResult> solve(Board board, Robot[] robots,
+            Point target, int targetRobot, SolverOptions options,
+            SolverListener listener) {
+        return submit(board, robots, target, targetRobot, options, listener,
+                false);
+    }
+
+    public CompletableFuture<SolverResult> solveAnytime(Board board,
+            Robot[] robots, Point target, int targetRobot,
+            SolverOptions options, SolverListener listener) {
+        return submit(board, robots, target, targetRobot, options, listener,
+                true);
+    }
+
+    private CompletableFuture<SolverResult> submit(Board board,
+            Robot[] robots, Point target, int targetRobot,
+            final SolverOptions options, SolverListener listener,
+            final boolean anytime) {
+        final SolverEngine engine = new SolverEngine(board, options);
+        engine.setListener(listener);
+        // the robots may be moved around by the caller while we search
+        final Robot[] initial = new Robot[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            Point position = robots[i].getPosition();
+            initial[i] = new Robot(robots[i].getLabel(), robots[i].getColor(),
+                    new Point(position.x, position.y));
+        }
+        final Point goal = new Point(target.x, target.y);
+        final int robot = targetRobot;
+
+        final CompletableFuture<SolverResult> future =
+                new CompletableFuture<SolverResult>();
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                engine.cancel();
+            }
+        });
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                if (anytime) {
+                    engine.solveAnytime(initial, goal, robot,
+                            options.getMaxMoves(), options.getMaxTime());
+                } else {
+                    engine.solve(initial, goal, robot, options.getMaxMoves(),
+                            options.getMaxTime());
+                }
+                future.complete(engine.result());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,207 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers many (target, robot) queries for the same board and starting
+ * configuration at once. A single breadth first search explores the state
+ * space and every generated state is checked against all queries which are
+ * still open, so each query is answered with an optimal solution as soon as
+ * the search reaches its depth. The board's slide table and the move
+ * generation engine are shared by all calls to {@link #solve}.
+ *
+ * @author Markus Schepke
+ */
+public class BatchSolver {
+
+    /**
+     * A request to move one robot onto one target.
+     */
+    public static class Query {
+        private final Point target;
+        private final int   robot;
+
+        public Query(Point target, int robot) {
+            this.target = target;
+            this.robot = robot;
+        }
+
+        public Point getTarget() {
+            return target;
+        }
+
+        public int getRobot() {
+            return robot;
+        }
+
+        @Override
+        public String toString() {
+            return "robot " + robot + " to " + target;
+        }
+    }
+
+    /**
+     * The answer to a {@link Query}.
+     */
+    public static class Result {
+        private final Query         query;
+        private final List<Point[]> solution;
+        private final double        seconds;
+
+        private Result(Query query, List<Point[]> solution, double seconds) {
+            this.query = query;
+            this.solution = solution;
+            this.seconds = seconds;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        /**
+         * @return the number of moves of the optimal solution, or -1 if none
+         *         was found within the limits
+         */
+        public int moves() {
+            return solution == null ? -1 : solution.size() - 1;
+        }
+
+        public List<Point[]> solution() {
+            return solution;
+        }
+
+        /**
+         * @return the time in seconds from the start of the search until this
+         *         query was answered
+         */
+        public double seconds() {
+            return seconds;
+        }
+    }
+
+    private final Board         board;
+    private final SolverOptions options;
+    private final SlideEngine   engine;
+
+    public BatchSolver(Board board) {
+        this(board, new SolverOptions());
+    }
+
+    public BatchSolver(Board board, SolverOptions options) {
+        this.board = board;
+        this.options = options;
+        this.engine = options.getEngine().create(board);
+    }
+
+    /**
+     * Queries for every target of the board and every robot.
+     */
+    public static List<Query> allQueries(Board board, Robot[] robots) {
+        List<Query> queries = new ArrayList<Query>();
+        for (Point target : board.getTargets()) {
+            for (int robot = 0; robot < robots.length; robot++) {
+                queries.add(new Query(target, robot));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * @return the results in the same order as the queries
+     */
+    public List<Result> solve(Robot[] robots, List<Query> queries) {
+        long start = System.nanoTime();
+        long end = (long) (start + options.getMaxTime() * 1e9);
+
+        int numberRobots = robots.length;
+        int cells = board.getWidth() * board.getHeight();
+        StateEncoding encoding = new StateEncoding(board, numberRobots);
+
+        // the open queries for each robot and cell, chained through next
+        int[][] first = new int[numberRobots][cells];
+        for (int[] row : first) {
+            Arrays.fill(row, -1);
+        }
+        int[] next = new int[queries.size()];
+        int[] found = new int[queries.size()];
+        Arrays.fill(found, -1);
+        double[] seconds = new double[queries.size()];
+
+        long initial = encoding.encode(robots);
+        int open = 0;
+        for (int q = queries.size() - 1; q >= 0; q--) {
+            Query query = queries.get(q);
+            int cell = board.cell(query.getTarget());
+            if (encoding.cell(initial, query.getRobot()) == cell) {
+                found[q] = 0;
+                continue;
+            }
+            next[q] = first[query.getRobot()][cell];
+            first[query.getRobot()][cell] = q;
+            open++;
+        }
+
+        long[] states = new long[Math.max(options.getTableCapacity(), 1)];
+        int[] parents = new int[states.length];
+        int size = 0;
+        StateTable visited = new StateTable(options.getTableCapacity(),
+                options.getLoadFactor());
+        states[size] = initial;
+        parents[size] = -1;
+        size++;
+        visited.add(initial);
+
+        int[] dests = new int[Board.DIRECTIONS.length];
+        int levelStart = 0;
+        search: for (int depth = 0; open > 0 && depth < options.getMaxMoves()
+                && levelStart < size; depth++) {
+            int levelEnd = size;
+            for (int index = levelStart; index < levelEnd; index++) {
+                if (System.nanoTime() >= end) {
+                    break search;
+                }
+                long state = states[index];
+                for (int i = 0; i < numberRobots; i++) {
+                    int count = engine.reachable(i, state, encoding, dests);
+                    for (int d = 0; d < count; d++) {
+                        long child = encoding.move(state, i, dests[d]);
+                        if (!visited.add(child)) {
+                            continue;
+                        }
+                        if (size == states.length) {
+                            states = Arrays.copyOf(states, 2 * size);
+                            parents = Arrays.copyOf(parents, 2 * size);
+                        }
+                        states[size] = child;
+                        parents[size] = index;
+                        for (int q = first[i][dests[d]]; q >= 0; q = next[q]) {
+                            found[q] = size;
+                            seconds[q] = (System.nanoTime() - start) / 1e9;
+                            open--;
+                        }
+                        first[i][dests[d]] = -1;
+                        size++;
+                    }
+                }
+            }
+            levelStart = levelEnd;
+        }
+
+        List<Result> results = new ArrayList<Result>(queries.size());
+        for (int q = 0; q < queries.size(); q++) {
+            List<Point[]> solution = null;
+            if (found[q] >= 0) {
+                solution = new ArrayList<Point[]>();
+                for (int index = found[q]; index >= 0; index = parents[index]) {
+                    solution.add(encoding.decode(states[index]));
+                }
+                Collections.reverse(solution);
+            }
+            results.add(new Result(queries.get(q), solution, seconds[q]));
+        }
+        return results;
+    }
+}
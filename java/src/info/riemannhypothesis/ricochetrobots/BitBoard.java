@@ -0,0 +1,200 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.Arrays;
+
+/**
+ * A {@link SlideEngine} which stores the walls of a {@link Board} as one
+ * <code>long</code> bitmask per row and per column, so boards can be up to 64
+ * cells wide and high. The robots are kept as row and column occupancy
+ * bitmasks too, and the destination of a move is the lowest or highest set
+ * bit of the combined mask beyond the starting cell.
+ * <p>
+ * The occupancy masks belong to the last state each thread asked about. For
+ * a new state only the bits of the robots which moved since are updated, so
+ * the masks are built once for all moves out of a configuration rather than
+ * for every move.
+ *
+ * @author Markus Schepke
+ */
+public class BitBoard implements SlideEngine {
+
+    private final int    width, height;
+
+    /** bit x of row y is set if (x, y) has a wall (or edge) on its right */
+    private final long[] stopsRight;
+    /** bit x of row y is set if (x, y) has a wall (or edge) on its left */
+    private final long[] stopsLeft;
+    /** bit y of column x is set if (x, y) has a wall (or edge) below */
+    private final long[] stopsDown;
+    /** bit y of column x is set if (x, y) has a wall (or edge) above */
+    private final long[] stopsUp;
+
+    /** the column and row of each cell */
+    private final byte[] xs, ys;
+
+    private final ThreadLocal<Occupancy> occupancy;
+
+    public BitBoard(Board board) {
+        width = board.getWidth();
+        height = board.getHeight();
+        if (width > Long.SIZE || height > Long.SIZE) {
+            throw new IllegalArgumentException("Board of size " + width + "x"
+                    + height + " exceeds " + Long.SIZE + "x" + Long.SIZE);
+        }
+
+        stopsRight = new long[height];
+        stopsLeft = new long[height];
+        stopsDown = new long[width];
+        stopsUp = new long[width];
+        xs = new byte[width * height];
+        ys = new byte[width * height];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = board.cell(x, y);
+                xs[cell] = (byte) x;
+                ys[cell] = (byte) y;
+                if (!board.isConnected(cell, Board.RIGHT)) {
+                    stopsRight[y] |= 1L << x;
+                }
+                if (!board.isConnected(cell, Board.LEFT)) {
+                    stopsLeft[y] |= 1L << x;
+                }
+                if (!board.isConnected(cell, Board.DOWN)) {
+                    stopsDown[x] |= 1L << y;
+                }
+                if (!board.isConnected(cell, Board.UP)) {
+                    stopsUp[x] |= 1L << y;
+                }
+            }
+        }
+
+        occupancy = new ThreadLocal<Occupancy>() {
+            @Override
+            protected Occupancy initialValue() {
+                return new Occupancy();
+            }
+        };
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int dest(int cell, int dir, long state, StateEncoding encoding) {
+        return dest(cell, dir, occupancy(state, encoding));
+    }
+
+    @Override
+    public int reachable(int robot, long state, StateEncoding encoding,
+            int[] dests) {
+        Occupancy occupied = occupancy(state, encoding);
+        int start = encoding.cell(state, robot);
+        int count = 0;
+        for (int dir : Board.DIRECTIONS) {
+            int dest = dest(start, dir, occupied);
+            if (dest != start) {
+                dests[count++] = dest;
+            }
+        }
+        return count;
+    }
+
+    private int dest(int cell, int dir, Occupancy occupied) {
+        int x = xs[cell] & 0xFF;
+        int y = ys[cell] & 0xFF;
+        switch (dir) {
+        case Board.RIGHT:
+            return cell - x
+                    + lowest(stopsRight[y] | (occupied.rows[y] >>> 1), x);
+        case Board.LEFT:
+            return cell - x
+                    + highest(stopsLeft[y] | (occupied.rows[y] << 1), x);
+        case Board.DOWN:
+            return lowest(stopsDown[x] | (occupied.columns[x] >>> 1), y)
+                    * width + x;
+        default:
+            return highest(stopsUp[x] | (occupied.columns[x] << 1), y)
+                    * width + x;
+        }
+    }
+
+    /**
+     * @return the occupancy masks of this thread, brought up to date with the
+     *         given state
+     */
+    private Occupancy occupancy(long state, StateEncoding encoding) {
+        Occupancy occupied = occupancy.get();
+        if (occupied.encoding != encoding) {
+            occupied.reset(encoding);
+        }
+        if (occupied.state != state) {
+            int n = encoding.getNumberRobots();
+            for (int i = 0; i < n; i++) {
+                int from = encoding.cell(occupied.state, i);
+                int to = encoding.cell(state, i);
+                if (from != to) {
+                    occupied.toggle(from);
+                    occupied.toggle(to);
+                }
+            }
+            occupied.state = state;
+        }
+        return occupied;
+    }
+
+    /**
+     * @return the index of the lowest set bit in the mask at or above from
+     */
+    private static int lowest(long mask, int from) {
+        return Long.numberOfTrailingZeros(mask & (-1L << from));
+    }
+
+    /**
+     * @return the index of the highest set bit in the mask at or below from
+     */
+    private static int highest(long mask, int from) {
+        long below = -1L >>> (Long.SIZE - 1 - from);
+        return Long.SIZE - 1 - Long.numberOfLeadingZeros(mask & below);
+    }
+
+    /**
+     * The row and column occupancy masks of the robots in one state.
+     */
+    private final class Occupancy {
+        private final long[]  rows    = new long[height];
+        private final long[]  columns = new long[width];
+        private StateEncoding encoding;
+        private long          state;
+
+        /**
+         * Starts over with all robots of the encoding on cell 0, which is
+         * the packed state 0.
+         */
+        private void reset(StateEncoding encoding) {
+            Arrays.fill(rows, 0);
+            Arrays.fill(columns, 0);
+            this.encoding = encoding;
+            this.state = 0;
+            if (encoding.getNumberRobots() % 2 == 1) {
+                toggle(0);
+            }
+        }
+
+        /**
+         * Flips the bits of the given cell. Flipping rather than setting and
+         * clearing keeps the masks right while the robots of a new state are
+         * moved one at a time, even past a cell another has not left yet.
+         */
+        private void toggle(int cell) {
+            int x = xs[cell] & 0xFF, y = ys[cell] & 0xFF;
+            rows[y] ^= 1L << x;
+            columns[x] ^= 1L << y;
+        }
+    }
+}
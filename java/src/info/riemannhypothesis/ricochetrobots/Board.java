@@ -8,6 +8,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -15,7 +16,7 @@ import java.util.Set;
 /**
  * @author Markus Schepke
  */
-public class Board {
+public class Board implements SlideEngine {
 
     public static final int      RIGHT            = 0;
     public static final int      UP               = 1;
@@ -27,6 +28,8 @@ public class Board {
             { LEFT, RIGHT }, { UP, DOWN }, { LEFT, RIGHT } };
     public static final int[]    OPPOSITE         = new int[] { LEFT, DOWN,
             RIGHT, UP                            };
+    public static final String[] DIRECTION_NAMES  = new String[] { "Right",
+            "Up", "Left", "Down"                 };
 
     public static final char[][] BARS             = new char[][] {
             { ' ', '\\', '|', '/' }, { '\\', ' ', '/', '-' },
@@ -46,39 +49,36 @@ public class Board {
 
     private final byte[][]       board;
     private final int            width, height;
+    private final int[]          cellOffsets;
+    private final int[]          slides;
 
     private final Set<Point>     targets;
+    private final long           fingerprint;
 
     public Board(int dim) {
         width = dim;
         height = dim;
         board = new byte[height][width];
         targets = new HashSet<Point>();
+        cellOffsets = cellOffsets(width);
+        slides = slides();
+        fingerprint = hash();
     }
 
     public Board(InputStream is) throws IOException {
+        this(readGrid(is));
+    }
 
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-        String line = br.readLine();
-        String[] dims = line.split("\\s+", 2);
-
-        width = Integer.parseInt(dims[0], 10);
-        height = Integer.parseInt(dims[1], 10);
+    /**
+     * Builds a board from the characters of its text format, as read by
+     * {@link #readGrid(BufferedReader)}.
+     */
+    Board(char[][] input) {
+        width = (input.length + 1) / 2;
+        height = (input[0].length + 1) / 2;
         board = new byte[width][height];
         targets = new HashSet<Point>();
-
-        char[][] input = new char[2 * width - 1][2 * height - 1];
-
-        for (int y = 0; y < 2 * height - 1; y++) {
-            line = br.readLine();
-            for (int x = 0; x < 2 * width - 1 && x < line.length(); x++) {
-                input[x][y] = line.charAt(x);
-            }
-        }
-
-        br.close();
-        br = null;
+        cellOffsets = cellOffsets(width);
 
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
@@ -105,6 +105,78 @@ public class Board {
             }
         }
 
+        slides = slides();
+        fingerprint = hash();
+    }
+
+    private static char[][] readGrid(InputStream is) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        try {
+            return readGrid(br);
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Reads the dimensions and the grid of the text format, leaving the
+     * reader on the line after the grid.
+     *
+     * @return the characters of the grid, indexed by column and row
+     */
+    static char[][] readGrid(BufferedReader br) throws IOException {
+        String line = br.readLine();
+        if (line == null) {
+            throw new IOException("Missing board dimensions");
+        }
+        String[] dims = line.trim().split("\\s+", 2);
+        int width, height;
+        try {
+            width = Integer.parseInt(dims[0], 10);
+            height = Integer.parseInt(dims[dims.length - 1], 10);
+        } catch (NumberFormatException e) {
+            throw new IOException("Illegal board dimensions: " + line);
+        }
+        if (dims.length < 2 || width < 1 || height < 1) {
+            throw new IOException("Illegal board dimensions: " + line);
+        }
+
+        char[][] input = new char[2 * width - 1][2 * height - 1];
+
+        for (int y = 0; y < 2 * height - 1; y++) {
+            line = br.readLine();
+            if (line == null) {
+                throw new IOException("Board ends after " + y + " lines");
+            }
+            for (int x = 0; x < 2 * width - 1 && x < line.length(); x++) {
+                input[x][y] = line.charAt(x);
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Restores a board from its tables, as stored by {@link BoardLibrary}.
+     *
+     * @param tiles
+     *            the open directions of each cell in reading order, see
+     *            {@link #tile(int)}
+     * @param slides
+     *            the slide table, see {@link #dest(int, int)}, which is
+     *            taken over without copying
+     */
+    Board(int width, int height, byte[] tiles, Set<Point> targets,
+            int[] slides) {
+        this.width = width;
+        this.height = height;
+        this.board = new byte[width][height];
+        for (int cell = 0; cell < tiles.length; cell++) {
+            board[cell % width][cell / width] = tiles[cell];
+        }
+        this.targets = targets;
+        this.cellOffsets = cellOffsets(width);
+        this.slides = slides;
+        this.fingerprint = hash();
     }
 
     public int getWidth() {
@@ -119,6 +191,38 @@ public class Board {
         return targets;
     }
 
+    /**
+     * @return a 64 bit FNV-1a hash of the dimensions, the walls and the
+     *         targets, which identifies the board in logs, events and caches;
+     *         computed once when the board is built
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    private long hash() {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        for (int cell = 0; cell < width * height; cell++) {
+            int tile = targets.contains(point(cell)) ? 1 << 4 : 0;
+            for (int dir : DIRECTIONS) {
+                if (isConnected(cell, dir)) {
+                    tile |= 1 << dir;
+                }
+            }
+            hash = (hash ^ tile) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the point lies on the board
+     */
+    public boolean contains(Point p) {
+        return p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
+    }
+
     public boolean isConnected(Point p, int dir) {
         return (board[p.x][p.y] & BITS_DIR[dir]) == BITS_DIR[dir];
     }
@@ -140,31 +244,19 @@ public class Board {
         if (!isConnected(p, dir)) {
             return p;
         }
-        Point result = new Point(p.x, p.y);
-        do {
-            result.x += OFFSETS_DIR[dir][0];
-            result.y += OFFSETS_DIR[dir][1];
-        } while (isConnected(result, dir));
-        return result;
+        return point(dest(cell(p), dir));
     }
 
     public Point dest(Point p, int dir, Point[] blocked) {
         if (!isConnected(p, dir)) {
             return p;
         }
-        Point result = new Point(p.x, p.y);
-        do {
-            result.x += OFFSETS_DIR[dir][0];
-            result.y += OFFSETS_DIR[dir][1];
-            for (Point block : blocked) {
-                if (result.equals(block)) {
-                    result.x -= OFFSETS_DIR[dir][0];
-                    result.y -= OFFSETS_DIR[dir][1];
-                    return result;
-                }
-            }
-        } while (isConnected(result, dir));
-        return result;
+        int start = cell(p);
+        int result = dest(start, dir);
+        for (Point block : blocked) {
+            result = cutShort(start, dir, result, cell(block));
+        }
+        return point(result);
     }
 
     public Set<Point> reachable(Point p) {
@@ -183,6 +275,210 @@ public class Board {
         return result;
     }
 
+    /**
+     * @return the index of the cell at (x, y), i.e., <code>y * width + x</code>
+     */
+    public int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    public int cell(Point p) {
+        return cell(p.x, p.y);
+    }
+
+    public Point point(int cell) {
+        return new Point(cell % width, cell / width);
+    }
+
+    /**
+     * @return the direction leading from one cell to another in the same row
+     *         or column, or -1 if they are equal or not in line
+     */
+    public int direction(int from, int to) {
+        if (from == to) {
+            return -1;
+        }
+        if (from / width == to / width) {
+            return to > from ? RIGHT : LEFT;
+        }
+        if (from % width == to % width) {
+            return to > from ? DOWN : UP;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the directions a robot can leave the cell in if no other robot
+     *         is in the way, as a bit mask with the bit
+     *         <code>1 &lt;&lt; dir</code> for each direction
+     */
+    byte tile(int cell) {
+        return board[cell % width][cell / width];
+    }
+
+    /**
+     * @return the slide table, not a copy
+     */
+    int[] slideTable() {
+        return slides;
+    }
+
+    public boolean isConnected(int cell, int dir) {
+        return (board[cell % width][cell / width] & BITS_DIR[dir]) != 0;
+    }
+
+    /**
+     * @return the cell next to the given one in the given direction, which
+     *         must lie on the board
+     */
+    public int neighbour(int cell, int dir) {
+        return cell + cellOffsets[dir];
+    }
+
+    /**
+     * Looks up the cell a robot starting at the given cell ends up in when
+     * moving in the given direction on an otherwise empty board, i.e., when
+     * only walls stop it. The table is computed once on construction.
+     *
+     * @return the index of the destination cell, which equals the starting
+     *         cell if the robot cannot move in that direction
+     */
+    public int dest(int cell, int dir) {
+        return slides[(cell << 2) | dir];
+    }
+
+    /**
+     * Takes the wall-only destination from the slide table and cuts it short
+     * if a robot lies on the way, so the cost only depends on the number of
+     * robots, not on the length of the move.
+     */
+    @Override
+    public int dest(int cell, int dir, long state, StateEncoding encoding) {
+        int result = slides[(cell << 2) | dir];
+        if (result == cell) {
+            return cell;
+        }
+        for (int i = 0, n = encoding.getNumberRobots(); i < n; i++) {
+            result = cutShort(cell, dir, result, encoding.cell(state, i));
+        }
+        return result;
+    }
+
+    /**
+     * @return the destination when moving from the cell in the given
+     *         direction with a single robot at <code>blocker</code> on the
+     *         board, or none if it is -1
+     */
+    public int dest(int cell, int dir, int blocker) {
+        int result = slides[(cell << 2) | dir];
+        return blocker < 0 || result == cell ? result : cutShort(cell, dir,
+                result, blocker);
+    }
+
+    /**
+     * Computes for every cell a lower bound on the number of moves a robot
+     * needs from there to the target. The bound assumes a robot can stop on
+     * any cell along its way, as if another robot was placed there as a
+     * blocker, so it never overestimates the moves actually needed.
+     *
+     * @return the lower bounds indexed by cell, with
+     *         {@link Integer#MAX_VALUE} for cells the target cannot be
+     *         reached from at all
+     */
+    public int[] lowerBounds(int target) {
+        int cells = width * height;
+        int[] bounds = new int[cells];
+        Arrays.fill(bounds, Integer.MAX_VALUE);
+        int[] queue = new int[cells];
+        int head = 0, tail = 0;
+        bounds[target] = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir : DIRECTIONS) {
+                // walk backwards along all cells that can slide over this one
+                int back = OPPOSITE[dir];
+                int from = cell;
+                while (isConnected(from, back)) {
+                    from += cellOffsets[back];
+                    if (bounds[from] == Integer.MAX_VALUE) {
+                        bounds[from] = bounds[cell] + 1;
+                        queue[tail++] = from;
+                    }
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the cell right in front of the blocker if it lies on the way
+     *         from start to stop, otherwise stop
+     */
+    private int cutShort(int start, int dir, int stop, int blocker) {
+        int step = cellOffsets[dir];
+        if (step > 0) {
+            if (blocker <= start || blocker > stop) {
+                return stop;
+            }
+        } else if (blocker >= start || blocker < stop) {
+            return stop;
+        }
+        if ((dir == UP || dir == DOWN) && (blocker - start) % width != 0) {
+            return stop;
+        }
+        return blocker - step;
+    }
+
+    /**
+     * Collects the cells the given robot can move to in the packed state.
+     *
+     * @param dests
+     *            an array of length at least 4 the destination cells are
+     *            written to
+     * @return the number of destinations written to <code>dests</code>; moves
+     *         which would leave the robot where it is are not counted
+     */
+    public int reachable(int robot, long state, StateEncoding encoding,
+            int[] dests) {
+        int start = encoding.cell(state, robot);
+        int count = 0;
+        for (int dir : DIRECTIONS) {
+            int dest = dest(start, dir, state, encoding);
+            if (dest != start) {
+                dests[count++] = dest;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes the wall-only destination of every cell in every direction,
+     * see {@link #dest(int, int)}.
+     */
+    private int[] slides() {
+        int cells = width * height;
+        int[] result = new int[cells << 2];
+        for (int cell = 0; cell < cells; cell++) {
+            for (int dir : DIRECTIONS) {
+                int dest = cell;
+                while (isConnected(dest, dir)) {
+                    dest += cellOffsets[dir];
+                }
+                result[(cell << 2) | dir] = dest;
+            }
+        }
+        return result;
+    }
+
+    private static int[] cellOffsets(int width) {
+        int[] offsets = new int[DIRECTIONS.length];
+        for (int dir : DIRECTIONS) {
+            offsets[dir] = OFFSETS_DIR[dir][1] * width + OFFSETS_DIR[dir][0];
+        }
+        return offsets;
+    }
+
     @Override
     public String toString() {
         return toString(null, targets, null);
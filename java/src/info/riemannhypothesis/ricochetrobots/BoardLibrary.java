@@ -0,0 +1,342 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Many boards in one binary file, which is memory mapped so that any board is
+ * available without parsing its text. Each board is stored with its walls,
+ * targets, slide table and the robots of its text file, if there are any;
+ * restoring it only copies a few kilobytes.
+ * <p>
+ * The file starts with a header (magic, version, number of boards) and an
+ * index of the board names and the offsets of their records. A record holds
+ * the width and height, the targets as cell indices, one byte of open
+ * directions per cell (see {@link Board#tile(int)}), the slide table as
+ * unsigned 16 bit cell indices and finally the robots, each with its cell,
+ * color and label. All numbers are big endian.
+ *
+ * @author Markus Schepke
+ */
+public class BoardLibrary {
+
+    private static final int           MAGIC     = 0x5252424C;     // RRBL
+    private static final int           VERSION   = 1;
+    /** the most cells the 16 bit slide table can address */
+    private static final int           MAX_CELLS = 1 << 16;
+
+    private final ByteBuffer           data;
+    private final Map<String, Integer> offsets;
+
+    private BoardLibrary(ByteBuffer data, Map<String, Integer> offsets) {
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Converts boards in the text format into a library; each board is named
+     * after its file without <code>.txt</code>.
+     */
+    public static void convert(List<File> textFiles, File library)
+            throws IOException {
+        Map<String, Board> boards = new LinkedHashMap<String, Board>();
+        Map<String, Robot[]> robots = new LinkedHashMap<String, Robot[]>();
+        for (File file : textFiles) {
+            String name = file.getName().replaceFirst("\\.txt$", "");
+            if (boards.containsKey(name)) {
+                throw new IllegalArgumentException("Duplicate board name: "
+                        + name);
+            }
+            PuzzleFile in = PuzzleFile.open(file);
+            try {
+                boards.put(name, in.getBoard());
+                robots.put(name, in.getRobots());
+            } catch (IllegalArgumentException e) {
+                // stored without robots if they are not all on the board
+            } finally {
+                in.close();
+            }
+        }
+        write(boards, robots, library);
+    }
+
+    /**
+     * Writes the boards, and for those which have them the robots, into a
+     * library file.
+     */
+    public static void write(Map<String, Board> boards,
+            Map<String, Robot[]> robots, File library) throws IOException {
+        List<byte[]> names = new ArrayList<byte[]>();
+        int indexSize = 3 * 4;
+        for (String name : boards.keySet()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(bytes);
+            indexSize += 2 + bytes.length + 4;
+        }
+
+        List<byte[]> records = new ArrayList<byte[]>();
+        long size = indexSize;
+        for (Map.Entry<String, Board> entry : boards.entrySet()) {
+            byte[] record = record(entry.getValue(), robots.get(entry
+                    .getKey()));
+            records.add(record);
+            size += record.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Library too large: " + size
+                    + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(boards.size());
+        int offset = indexSize;
+        for (int i = 0; i < names.size(); i++) {
+            buffer.putShort((short) names.get(i).length);
+            buffer.put(names.get(i));
+            buffer.putInt(offset);
+            offset += records.get(i).length;
+        }
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+
+        buffer.flip();
+        FileChannel channel = FileChannel.open(library.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static byte[] record(Board board, Robot[] robots) {
+        int width = board.getWidth(), height = board.getHeight();
+        int cells = width * height;
+        if (cells > MAX_CELLS) {
+            throw new IllegalArgumentException("Board too large: " + cells
+                    + " cells");
+        }
+        List<Integer> targets = new ArrayList<Integer>();
+        for (Point target : board.getTargets()) {
+            targets.add(board.cell(target));
+        }
+        Collections.sort(targets);
+        List<byte[]> labels = new ArrayList<byte[]>();
+        int robotsSize = 4;
+        if (robots != null) {
+            for (Robot robot : robots) {
+                byte[] label = robot.getLabel().getBytes(
+                        StandardCharsets.UTF_8);
+                labels.add(label);
+                robotsSize += 4 + 4 + 2 + label.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(3 * 4 + 4 * targets.size()
+                + cells + 2 * 4 * cells + robotsSize);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(targets.size());
+        for (int target : targets) {
+            buffer.putInt(target);
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            buffer.put(board.tile(cell));
+        }
+        for (int dest : board.slideTable()) {
+            buffer.putChar((char) dest);
+        }
+        buffer.putInt(robots == null ? 0 : robots.length);
+        for (int i = 0; i < labels.size(); i++) {
+            Color color = robots[i].getColor();
+            buffer.putInt(board.cell(robots[i].getPosition()));
+            buffer.putInt(color == null ? 0 : color.getRGB() & 0xFFFFFF);
+            buffer.putShort((short) labels.get(i).length);
+            buffer.put(labels.get(i));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Maps a library file and reads its index.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not a library
+     */
+    public static BoardLibrary open(File library) throws IOException {
+        FileChannel channel = FileChannel.open(library.toPath(),
+                StandardOpenOption.READ);
+        MappedByteBuffer data;
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a board library: " + library);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            // the mapping stays valid after the channel is closed
+            channel.close();
+        }
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new IOException("Not a board library: " + library);
+            }
+            int count = data.getInt();
+            Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[data.getShort() & 0xFFFF];
+                data.get(name);
+                int offset = data.getInt();
+                if (offset < 0 || offset >= data.limit()) {
+                    throw new IOException("Corrupt board library: "
+                            + library);
+                }
+                offsets.put(new String(name, StandardCharsets.UTF_8), offset);
+            }
+            return new BoardLibrary(data, offsets);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt board library: " + library);
+        }
+    }
+
+    /**
+     * @return the names of the boards in the order they were written
+     */
+    public List<String> names() {
+        return new ArrayList<String>(offsets.keySet());
+    }
+
+    public boolean contains(String name) {
+        return offsets.containsKey(name);
+    }
+
+    /**
+     * @return the board with the given name
+     * @throws IllegalArgumentException
+     *             if there is none or its record is corrupt
+     */
+    public Board board(String name) {
+        ByteBuffer record = record(name);
+        try {
+            int width = record.getInt(), height = record.getInt();
+            if (width <= 0 || height <= 0
+                    || (long) width * height > MAX_CELLS) {
+                throw corrupt(name);
+            }
+            int cells = width * height;
+            Set<Point> targets = new HashSet<Point>();
+            for (int i = record.getInt(); i > 0; i--) {
+                targets.add(point(checkCell(record.getInt(), cells, name),
+                        width));
+            }
+            byte[] tiles = new byte[cells];
+            record.get(tiles);
+            int[] slides = new int[cells << 2];
+            for (int i = 0; i < slides.length; i++) {
+                slides[i] = checkCell(record.getChar(), cells, name);
+            }
+            return new Board(width, height, tiles, targets, slides);
+        } catch (BufferUnderflowException e) {
+            throw corrupt(name);
+        }
+    }
+
+    /**
+     * @return the robots stored with the board, or null if it has none
+     * @throws IllegalArgumentException
+     *             if there is no such board or its record is corrupt
+     */
+    public Robot[] robots(String name) {
+        ByteBuffer record = record(name);
+        try {
+            int width = record.getInt(), height = record.getInt();
+            int cells = width * height;
+            int targets = record.getInt();
+            record.position(record.position() + 4 * targets + cells + 2 * 4
+                    * cells);
+            int count = record.getInt();
+            if (count == 0) {
+                return null;
+            }
+            Robot[] robots = new Robot[count];
+            for (int i = 0; i < count; i++) {
+                Point position = point(checkCell(record.getInt(), cells,
+                        name), width);
+                Color color = new Color(record.getInt());
+                byte[] label = new byte[record.getShort() & 0xFFFF];
+                if (label.length == 0) {
+                    throw corrupt(name);
+                }
+                record.get(label);
+                robots[i] = new Robot(new String(label,
+                        StandardCharsets.UTF_8), color, position);
+            }
+            return robots;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw corrupt(name);
+        }
+    }
+
+    private ByteBuffer record(String name) {
+        Integer offset = offsets.get(name);
+        if (offset == null) {
+            throw new IllegalArgumentException("Unknown board: " + name);
+        }
+        // a view of its own, so concurrent readers do not share a position
+        ByteBuffer record = data.duplicate();
+        record.position(offset);
+        return record;
+    }
+
+    private static Point point(int cell, int width) {
+        return new Point(cell % width, cell / width);
+    }
+
+    private static int checkCell(int cell, int cells, String name) {
+        if (cell < 0 || cell >= cells) {
+            throw corrupt(name);
+        }
+        return cell;
+    }
+
+    private static IllegalArgumentException corrupt(String name) {
+        return new IllegalArgumentException("Corrupt record of board " + name);
+    }
+
+    /**
+     * Converts the board files given after the name of the library.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BoardLibrary <library> <board.txt>...");
+            return;
+        }
+        List<File> files = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+        convert(files, new File(args[0]));
+        System.out.println("Wrote " + files.size() + " boards to " + args[0]
+                + ".");
+    }
+}
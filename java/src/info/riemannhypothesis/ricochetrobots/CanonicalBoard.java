@@ -0,0 +1,143 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A board turned into its canonical orientation, so that all rotations and
+ * reflections of a board, and of the puzzles on it, end up the same. The
+ * canonical orientation is the {@link Symmetry} which gives the smallest
+ * {@link Board#fingerprint()}; if the board looks the same under several of
+ * them, the one which gives the smallest target and robot cells decides for
+ * each puzzle. Puzzles are solved on the canonical board and their solutions
+ * mapped back with the inverse of {@link #symmetry(Puzzle)}, so caches and
+ * databases keyed by the canonical board and puzzle share their entries
+ * between up to eight equivalent puzzles.
+ *
+ * @author Markus Schepke
+ */
+public class CanonicalBoard {
+
+    private final Board          original;
+    private final Board          board;
+    private final long           fingerprint;
+    /** all symmetries which take the original board to the canonical one */
+    private final List<Symmetry> symmetries;
+
+    public CanonicalBoard(Board original) {
+        this.original = original;
+        this.symmetries = new ArrayList<Symmetry>();
+        long best = 0;
+        for (Symmetry s : Symmetry.values()) {
+            long fingerprint = s.fingerprint(original);
+            if (symmetries.isEmpty() || Long.compareUnsigned(fingerprint,
+                    best) < 0) {
+                symmetries.clear();
+                best = fingerprint;
+            }
+            if (fingerprint == best) {
+                symmetries.add(s);
+            }
+        }
+        this.board = symmetries.get(0).apply(original);
+        this.fingerprint = best;
+    }
+
+    public Board getOriginal() {
+        return original;
+    }
+
+    /**
+     * @return the board in its canonical orientation
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * @return the fingerprint of the canonical board
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return whether the board looks the same under some rotation or
+     *         reflection other than the identity
+     */
+    public boolean isSymmetric() {
+        return symmetries.size() > 1;
+    }
+
+    /**
+     * @return all symmetries which take the original board to the canonical
+     *         one
+     */
+    List<Symmetry> getSymmetries() {
+        return Collections.unmodifiableList(symmetries);
+    }
+
+    /**
+     * @return the symmetry which takes the puzzle on the original board to
+     *         its canonical form on the canonical board
+     */
+    public Symmetry symmetry(Puzzle puzzle) {
+        return symmetry(symmetries, puzzle, original.getWidth(),
+                original.getHeight());
+    }
+
+    /**
+     * @return the one of the given symmetries which gives the smallest target
+     *         and robot cells for the puzzle on a board of the given
+     *         dimensions
+     */
+    static Symmetry symmetry(List<Symmetry> symmetries, Puzzle puzzle,
+            int width, int height) {
+        Symmetry best = symmetries.get(0);
+        int[] bestKey = key(best, puzzle, width, height);
+        for (int i = 1; i < symmetries.size(); i++) {
+            int[] key = key(symmetries.get(i), puzzle, width, height);
+            if (compare(key, bestKey) < 0) {
+                best = symmetries.get(i);
+                bestKey = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the puzzle in its canonical form on the canonical board
+     */
+    public Puzzle canonical(Puzzle puzzle) {
+        return symmetry(puzzle).apply(puzzle, original.getWidth(),
+                original.getHeight());
+    }
+
+    /**
+     * @return the cells of the target and the robots in order after the
+     *         transformation
+     */
+    private static int[] key(Symmetry symmetry, Puzzle puzzle, int width,
+            int height) {
+        Point[] positions = puzzle.getPositions();
+        int[] key = new int[1 + positions.length];
+        int w = symmetry.width(width, height);
+        Point target = symmetry.apply(puzzle.getTarget(), width, height);
+        key[0] = target.y * w + target.x;
+        for (int i = 0; i < positions.length; i++) {
+            Point p = symmetry.apply(positions[i], width, height);
+            key[1 + i] = p.y * w + p.x;
+        }
+        return key;
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return a[i] < b[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,72 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * A thread safe set of packed robot configurations. The states are spread
+ * over a number of {@link StateTable} stripes by their hash, and each stripe
+ * is locked separately, so threads only contend when they add states to the
+ * same stripe at the same time.
+ *
+ * @author Markus Schepke
+ */
+public class ConcurrentStateTable {
+
+    private final StateTable[] stripes;
+    private final int          shift;
+
+    /**
+     * @param stripes
+     *            the number of separately locked stripes, rounded up to a
+     *            power of two
+     * @param capacity
+     *            the number of states all stripes together should hold
+     *            without resizing
+     * @param loadFactor
+     *            the load factor of every stripe
+     */
+    public ConcurrentStateTable(int stripes, int capacity, float loadFactor) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, stripes) - 1);
+        this.stripes = new StateTable[1 << bits];
+        this.shift = Integer.SIZE - bits;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new StateTable(capacity >> bits, loadFactor);
+        }
+    }
+
+    /**
+     * Adds a state to the table.
+     *
+     * @param key
+     *            the packed state
+     * @return true if the state was not contained in the table before
+     */
+    public boolean add(long key) {
+        StateTable stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.add(key);
+        }
+    }
+
+    public boolean contains(long key) {
+        StateTable stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.contains(key);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (StateTable stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private StateTable stripe(long key) {
+        // the stripes use the high bits of the hash, the slots within a stripe
+        // the low ones
+        return shift == Integer.SIZE ? stripes[0]
+                : stripes[StateEncoding.hash(key) >>> shift];
+    }
+}
@@ -0,0 +1,168 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A reproducible collection of {@link Puzzle}s, grouped by the board file
+ * they belong to. A corpus is either drawn from a seed or read back from a
+ * file written earlier, so the same puzzles can be solved again to compare
+ * timings and results across versions.
+ * <p>
+ * The file format is line based: a section starts with
+ * <code>board &lt;file&gt; &lt;width&gt; &lt;height&gt;</code> and is
+ * followed by one line per puzzle with the target's coordinates, the index
+ * of the target robot and the coordinates of all robots, separated by
+ * whitespace. Empty lines and lines starting with <code>#</code> are ignored.
+ *
+ * @author Markus Schepke
+ */
+public class Corpus {
+
+    private final Map<String, List<Puzzle>> puzzles = new LinkedHashMap<String, List<Puzzle>>();
+    private final Map<String, int[]>        dims    = new LinkedHashMap<String, int[]>();
+
+    /**
+     * Draws <code>size</code> puzzles for the board. Every board uses its own
+     * source seeded with <code>seed</code>, so a board's puzzles do not depend
+     * on the other boards of the corpus.
+     */
+    public void generate(String boardFile, Board board, int size,
+            int numberRobots, long seed) {
+        Random random = new Random(seed);
+        List<Puzzle> list = new ArrayList<Puzzle>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(Puzzle.random(board, numberRobots, random));
+        }
+        add(boardFile, board.getWidth(), board.getHeight(), list);
+    }
+
+    private void add(String boardFile, int width, int height,
+            List<Puzzle> list) {
+        if (puzzles.containsKey(boardFile)) {
+            throw new IllegalArgumentException("Duplicate board: " + boardFile);
+        }
+        puzzles.put(boardFile, list);
+        dims.put(boardFile, new int[] { width, height });
+    }
+
+    public List<String> getBoardFiles() {
+        return new ArrayList<String>(puzzles.keySet());
+    }
+
+    /**
+     * @return the puzzles for the board, each of which has been checked
+     *         against it
+     * @throws IllegalArgumentException
+     *             if the board does not match the one the corpus was
+     *             created for
+     */
+    public List<Puzzle> getPuzzles(String boardFile, Board board) {
+        List<Puzzle> list = puzzles.get(boardFile);
+        if (list == null) {
+            throw new IllegalArgumentException("No puzzles for board: "
+                    + boardFile);
+        }
+        int[] dim = dims.get(boardFile);
+        if (dim[0] != board.getWidth() || dim[1] != board.getHeight()) {
+            throw new IllegalArgumentException("Board " + boardFile
+                    + " is not " + dim[0] + "x" + dim[1]);
+        }
+        for (Puzzle puzzle : list) {
+            puzzle.check(board);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public int size() {
+        int size = 0;
+        for (List<Puzzle> list : puzzles.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    public void write(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        for (Map.Entry<String, List<Puzzle>> entry : puzzles.entrySet()) {
+            int[] dim = dims.get(entry.getKey());
+            out.println("board " + entry.getKey() + " " + dim[0] + " "
+                    + dim[1]);
+            for (Puzzle puzzle : entry.getValue()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(puzzle.getTarget().x).append(' ')
+                        .append(puzzle.getTarget().y).append(' ')
+                        .append(puzzle.getTargetRobot());
+                for (Point p : puzzle.getPositions()) {
+                    sb.append(' ').append(p.x).append(' ').append(p.y);
+                }
+                out.println(sb);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the input is not a valid corpus
+     */
+    public static Corpus read(Reader reader) throws IOException {
+        BufferedReader br = new BufferedReader(reader);
+        Corpus corpus = new Corpus();
+        List<Puzzle> list = null;
+        String line;
+        int number = 0;
+        while ((line = br.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                if (fields[0].equals("board")) {
+                    if (fields.length != 4) {
+                        throw new IllegalArgumentException(
+                                "expected board, width and height");
+                    }
+                    list = new ArrayList<Puzzle>();
+                    corpus.add(fields[1], Integer.parseInt(fields[2], 10),
+                            Integer.parseInt(fields[3], 10), list);
+                    continue;
+                }
+                if (list == null) {
+                    throw new IllegalArgumentException("puzzle before board");
+                }
+                if (fields.length < 5 || fields.length % 2 == 0) {
+                    throw new IllegalArgumentException(
+                            "expected target, robot and positions");
+                }
+                int[] values = new int[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = Integer.parseInt(fields[i], 10);
+                }
+                Point[] positions = new Point[(values.length - 3) / 2];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = new Point(values[3 + 2 * i],
+                            values[4 + 2 * i]);
+                }
+                list.add(new Puzzle(positions,
+                        new Point(values[0], values[1]), values[2]));
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException too
+                throw new IllegalArgumentException("Line " + number + ": "
+                        + e.getMessage(), e);
+            }
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,156 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Solves every puzzle of a corpus with the same options and summarises
+ * throughput and the distribution of solve times.
+ *
+ * @author Markus Schepke
+ */
+public class CorpusBenchmark {
+
+    public static final int  DEFAULT_SIZE   = 100;
+    public static final int  DEFAULT_ROBOTS = 4;
+    public static final long DEFAULT_SEED   = 1;
+
+    /**
+     * The measurements of one run over a list of puzzles.
+     */
+    public static class Report {
+        private final double[] latencies;
+        private final int      solved;
+        private final int      timedOut;
+        private final long     moves;
+        private final long     nodes;
+        private final double   seconds;
+
+        private Report(double[] latencies, int solved, int timedOut,
+                long moves, long nodes) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.solved = solved;
+            this.timedOut = timedOut;
+            this.moves = moves;
+            this.nodes = nodes;
+            double seconds = 0;
+            for (double latency : latencies) {
+                seconds += latency;
+            }
+            this.seconds = seconds;
+        }
+
+        public int puzzles() {
+            return latencies.length;
+        }
+
+        public int solved() {
+            return solved;
+        }
+
+        /**
+         * @return the number of puzzles without a solution within the move
+         *         limit, not counting those which ran out of time
+         */
+        public int unsolved() {
+            return latencies.length - solved - timedOut;
+        }
+
+        public int timedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return the sum of the moves of all solutions found, which should
+         *         not change between versions for an optimal search
+         */
+        public long moves() {
+            return moves;
+        }
+
+        public long nodes() {
+            return nodes;
+        }
+
+        /**
+         * @return the time spent solving, summed over all puzzles
+         */
+        public double seconds() {
+            return seconds;
+        }
+
+        public double puzzlesPerSecond() {
+            return seconds > 0 ? latencies.length / seconds : 0;
+        }
+
+        public double nodesPerSecond() {
+            return seconds > 0 ? nodes / seconds : 0;
+        }
+
+        /**
+         * @param p
+         *            the percentile between 0 and 100
+         * @return the solve time in seconds which the given percentage of
+         *         puzzles did not exceed (nearest rank)
+         */
+        public double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p / 100 * latencies.length);
+            return latencies[Math.max(0, Math.min(latencies.length, rank) - 1)];
+        }
+
+        public double max() {
+            return percentile(100);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d puzzles: %d solved, %d unsolved, %d timed out, "
+                            + "%d moves in total%n"
+                            + "%.3f s, %.1f puzzles/s, %.0f nodes/s%n"
+                            + "latency p50 %.2f ms, p95 %.2f ms, "
+                            + "p99 %.2f ms, max %.2f ms",
+                    puzzles(), solved(), unsolved(), timedOut(), moves(),
+                    seconds(), puzzlesPerSecond(), nodesPerSecond(),
+                    1e3 * percentile(50), 1e3 * percentile(95),
+                    1e3 * percentile(99), 1e3 * max());
+        }
+    }
+
+    private final SolverOptions options;
+
+    public CorpusBenchmark(SolverOptions options) {
+        this.options = options;
+    }
+
+    public Report run(Board board, List<Puzzle> puzzles) {
+        double[] latencies = new double[puzzles.size()];
+        int solved = 0;
+        int timedOut = 0;
+        long moves = 0;
+        long nodes = 0;
+        // one engine for all puzzles of the board, as a server would keep
+        SolverEngine engine = options.getSearchMode() == SolverOptions
+                .SearchMode.ASTAR ? new SolverEngine(board, options) : null;
+        for (int i = 0; i < latencies.length; i++) {
+            Puzzle puzzle = puzzles.get(i);
+            long start = System.nanoTime();
+            Solver solver = new Solver(board, puzzle.robots(),
+                    puzzle.getTarget(), puzzle.getTargetRobot(), options,
+                    engine);
+            latencies[i] = (System.nanoTime() - start) / 1e9;
+            nodes += solver.nodes();
+            if (solver.moves() >= 0) {
+                solved++;
+                moves += solver.moves();
+            } else if (solver.isTimedOut()) {
+                timedOut++;
+            }
+        }
+        return new Report(latencies, solved, timedOut, moves, nodes);
+    }
+}
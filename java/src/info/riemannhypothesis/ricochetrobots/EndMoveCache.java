@@ -0,0 +1,145 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * Remembers the end moves of the target robot, i.e., the cells it reaches
+ * the target from on its own as computed by {@link Solver#endMoves}, for the
+ * configurations of the other robots seen most recently. Since the end moves
+ * only depend on where the other robots are, a breadth first search which
+ * moves the target robot around asks for the same configuration over and
+ * over again.
+ * <p>
+ * The cache is keyed by the packed state with the target robot taken out and
+ * mapped directly: each key has exactly one slot it can be stored in, and
+ * evicts whichever configuration used that slot before. The end moves of a
+ * configuration are kept in a row of <code>int</code>s, the number of moves
+ * from each cell followed by the cell the first of them stops on.
+ *
+ * @author Markus Schepke
+ */
+class EndMoveCache {
+
+    private final Board         board;
+    private final StateEncoding encoding;
+    private final int           target;
+    private final int           targetRobot;
+    private final int           cells;
+    private final SolverStats   stats;
+
+    private final long[]        keys;
+    private final int[][]       rows;
+    private final int           mask;
+    private final int[]         blockers;
+
+    /**
+     * @param capacity
+     *            the number of configurations to keep, rounded up to a power
+     *            of two
+     */
+    EndMoveCache(Board board, StateEncoding encoding, int target,
+            int targetRobot, int capacity, SolverStats stats) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: "
+                    + capacity);
+        }
+        this.board = board;
+        this.encoding = encoding;
+        this.target = target;
+        this.targetRobot = targetRobot;
+        this.cells = board.getWidth() * board.getHeight();
+        this.stats = stats;
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        this.keys = new long[slots];
+        // rows are only allocated once their slot is used
+        this.rows = new int[slots][];
+        this.mask = slots - 1;
+        this.blockers = new int[encoding.getNumberRobots() - 1];
+    }
+
+    /**
+     * @return the end moves for the other robots in the state: the number of
+     *         moves needed from each cell, or -1 if the target cannot be
+     *         reached from there, followed by the cell the first move stops
+     *         on (-1 for the target itself) at index <code>cells + cell</code>
+     */
+    int[] get(long state) {
+        long key = encoding.move(state, targetRobot, 0);
+        int slot = StateEncoding.hash(key) & mask;
+        int[] row = rows[slot];
+        if (row != null && keys[slot] == key) {
+            stats.endMoveHit();
+            return row;
+        }
+        stats.endMoveMiss();
+        if (row == null) {
+            row = rows[slot] = new int[2 * cells];
+        }
+        keys[slot] = key;
+        compute(state, row);
+        return row;
+    }
+
+    private void compute(long state, int[] row) {
+        for (int i = 0, c = 0; i < encoding.getNumberRobots(); i++) {
+            if (i != targetRobot) {
+                blockers[c++] = encoding.cell(state, i);
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            row[cell] = -1;
+        }
+        for (int blocker : blockers) {
+            if (blocker == target) {
+                return;
+            }
+        }
+        row[target] = 0;
+        row[cells + target] = -1;
+        for (int dir : Board.DIRECTIONS) {
+            // the robot coming from that side only stops on the target if
+            // it cannot slide on
+            if (isConnected(target, dir)
+                    && !isConnected(target, Board.OPPOSITE[dir])) {
+                add(row, board.neighbour(target, dir), 1, dir, target);
+            }
+        }
+    }
+
+    /**
+     * The same walk as <code>Solver.addToMap</code>: the robot on the cell
+     * moving against the direction slides on until it stops on
+     * <code>next</code>.
+     */
+    private void add(int[] row, int cell, int moves, int direction, int next) {
+        if (row[cell] >= 0 && row[cell] <= moves) {
+            // been there, done that!
+            return;
+        }
+        row[cell] = moves;
+        row[cells + cell] = next;
+        if (isConnected(cell, direction)) {
+            add(row, board.neighbour(cell, direction), moves, direction, next);
+        }
+        for (int perp : Board.PERP[direction]) {
+            int back = Board.OPPOSITE[perp];
+            if (!isConnected(cell, perp) && isConnected(cell, back)) {
+                add(row, board.neighbour(cell, back), moves + 1, back, cell);
+            }
+        }
+    }
+
+    private boolean isConnected(int cell, int dir) {
+        if (!board.isConnected(cell, dir)) {
+            return false;
+        }
+        int neighbour = board.neighbour(cell, dir);
+        for (int blocker : blockers) {
+            if (blocker == neighbour) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputed distances of a lone robot to every target of a board, both on
+ * the empty board and with any single other robot on it as a blocker. The
+ * tables are computed once by retrograde analysis from each target, written
+ * to a binary file and memory mapped from there, so the cost of computing
+ * them is only paid the first time a board is used.
+ * <p>
+ * Every entry is one byte: the number of moves in the lower six bits and the
+ * direction of the first of them in the upper two. The file starts with a
+ * header (magic, version, board fingerprint, width, height and the target
+ * cells), followed by one table per target, each of which holds the entries
+ * for all cells without a blocker and then with a blocker on each cell.
+ *
+ * @author Markus Schepke
+ */
+public class EndgameDatabase {
+
+    private static final int  MAGIC       = 0x52524442;            // RRDB
+    private static final int  VERSION     = 1;
+    private static final int  UNREACHABLE = 0x3F;
+
+    private final long        fingerprint;
+    private final int         cells;
+    private final int[]       tables;
+    private final ByteBuffer  data;
+    private final int         offset;
+
+    private EndgameDatabase(long fingerprint, int cells, int[] targets,
+            ByteBuffer data, int offset) {
+        this.fingerprint = fingerprint;
+        this.cells = cells;
+        this.tables = new int[cells];
+        Arrays.fill(tables, -1);
+        for (int i = 0; i < targets.length; i++) {
+            tables[targets[i]] = i;
+        }
+        this.data = data;
+        this.offset = offset;
+    }
+
+    /**
+     * Maps the database of the board from its file in the directory, named
+     * after the board's fingerprint, computing and writing it first if it
+     * does not exist yet.
+     */
+    public static EndgameDatabase open(Board board, File directory)
+            throws IOException {
+        directory.mkdirs();
+        return openFile(board, new File(directory, String.format(
+                "%016x.rrdb", board.fingerprint())));
+    }
+
+    /**
+     * Maps the database of the board from the file, computing and writing it
+     * first if the file does not exist or belongs to a different board.
+     */
+    public static EndgameDatabase openFile(Board board, File file)
+            throws IOException {
+        if (file.exists()) {
+            EndgameDatabase database = read(file);
+            if (database != null
+                    && database.fingerprint == board.fingerprint()) {
+                return database;
+            }
+        }
+        write(board, file);
+        EndgameDatabase database = read(file);
+        if (database == null) {
+            throw new IOException("Cannot read " + file);
+        }
+        return database;
+    }
+
+    /**
+     * Computes the database of the board and writes it to the file.
+     */
+    public static void write(Board board, File file) throws IOException {
+        int cells = board.getWidth() * board.getHeight();
+        List<Integer> targets = new ArrayList<Integer>();
+        for (int cell = 0; cell < cells; cell++) {
+            if (board.getTargets().contains(board.point(cell))) {
+                targets.add(cell);
+            }
+        }
+        long tableSize = (long) (cells + 1) * cells;
+        long size = header(targets.size()) + targets.size() * tableSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board too large: " + cells
+                    + " cells and " + targets.size() + " targets");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(board.fingerprint());
+        buffer.putInt(board.getWidth());
+        buffer.putInt(board.getHeight());
+        buffer.putInt(targets.size());
+        for (int target : targets) {
+            buffer.putInt(target);
+        }
+
+        int[] dests = new int[cells << 2];
+        byte[] entries = new byte[cells];
+        for (int target : targets) {
+            for (int blocker = -1; blocker < cells; blocker++) {
+                retrograde(board, target, blocker, dests, entries);
+                buffer.put(entries);
+            }
+        }
+
+        buffer.flip();
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static int header(int targets) {
+        return 7 * 4 + 4 * targets;
+    }
+
+    /**
+     * Computes the entries for one target and blocker, level by level
+     * backwards from the target: a cell is at distance d + 1 if one of its
+     * moves ends on a cell at distance d.
+     */
+    private static void retrograde(Board board, int target, int blocker,
+            int[] dests, byte[] entries) {
+        int cells = entries.length;
+        Arrays.fill(entries, (byte) UNREACHABLE);
+        if (blocker == target) {
+            return;
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            for (int dir : Board.DIRECTIONS) {
+                dests[(cell << 2) | dir] = board.dest(cell, dir, blocker);
+            }
+        }
+        entries[target] = 0;
+        boolean changed = true;
+        for (int d = 0; changed && d + 1 < UNREACHABLE; d++) {
+            changed = false;
+            for (int cell = 0; cell < cells; cell++) {
+                if (cell == blocker || entries[cell] != UNREACHABLE) {
+                    continue;
+                }
+                for (int dir : Board.DIRECTIONS) {
+                    int dest = dests[(cell << 2) | dir];
+                    if (dest != cell && (entries[dest] & UNREACHABLE) == d) {
+                        entries[cell] = (byte) (dir << 6 | (d + 1));
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the database in the file, or null if it is not one
+     */
+    private static EndgameDatabase read(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        try {
+            if (channel.size() < header(0)
+                    || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                return null;
+            }
+            long fingerprint = data.getLong(8);
+            int cells = data.getInt(16) * data.getInt(20);
+            int[] targets = new int[data.getInt(24)];
+            long expected = header(targets.length) + (long) targets.length
+                    * (cells + 1) * cells;
+            if (cells <= 0 || expected != channel.size()) {
+                return null;
+            }
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = data.getInt(28 + 4 * i);
+            }
+            return new EndgameDatabase(fingerprint, cells, targets, data,
+                    header(targets.length));
+        } finally {
+            // the mapping stays valid after the channel is closed
+            channel.close();
+        }
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return true if the database has a table for the target cell
+     */
+    public boolean covers(int target) {
+        return target >= 0 && target < cells && tables[target] >= 0;
+    }
+
+    private int entry(int target, int blocker, int cell) {
+        int index = offset + tables[target] * (cells + 1) * cells
+                + (blocker + 1) * cells + cell;
+        return data.get(index) & 0xFF;
+    }
+
+    /**
+     * @param blocker
+     *            the cell of the only other robot, or -1 for none
+     * @return the number of moves a lone robot needs from the cell to the
+     *         covered target, or -1 if it cannot get there (within 62
+     *         moves)
+     */
+    public int distance(int target, int blocker, int cell) {
+        int distance = entry(target, blocker, cell) & UNREACHABLE;
+        return distance == UNREACHABLE ? -1 : distance;
+    }
+
+    /**
+     * @return the direction of the first move of a shortest way from the
+     *         cell to the covered target, or -1 if there is none
+     */
+    public int direction(int target, int blocker, int cell) {
+        int entry = entry(target, blocker, cell);
+        return (entry & UNREACHABLE) == UNREACHABLE || entry == 0 ? -1
+                : entry >>> 6;
+    }
+
+    /**
+     * Looks for a way for the robot to reach the covered target on its own,
+     * while all other robots stay where they are. The ways stored for the
+     * empty board and for each other robot as the only blocker are followed
+     * and checked against the actual configuration; the shortest one which
+     * is not disturbed by the remaining robots is returned.
+     *
+     * @param path
+     *            an array the cells the robot stops on are written to
+     * @return the number of moves written to <code>path</code>, or -1 if no
+     *         stored way works in this configuration
+     */
+    public int finish(int target, int robot, long state,
+            StateEncoding encoding, SlideEngine engine, int[] path) {
+        int start = encoding.cell(state, robot);
+        int best = -1, bestBlocker = -1;
+        for (int i = -1; i < encoding.getNumberRobots(); i++) {
+            if (i == robot) {
+                continue;
+            }
+            int blocker = i < 0 ? -1 : encoding.cell(state, i);
+            int distance = distance(target, blocker, start);
+            if (distance >= 0 && distance <= path.length
+                    && (best < 0 || distance < best)
+                    && follow(target, blocker, robot, state, encoding,
+                            engine, distance, null)) {
+                best = distance;
+                bestBlocker = blocker;
+            }
+        }
+        if (best >= 0) {
+            follow(target, bestBlocker, robot, state, encoding, engine, best,
+                    path);
+        }
+        return best;
+    }
+
+    /**
+     * Follows the stored way for the blocker in the actual configuration.
+     *
+     * @param path
+     *            an array the cells the robot stops on are written to, or
+     *            null
+     * @return true if the robot reaches the target with the stored number of
+     *         moves
+     */
+    private boolean follow(int target, int blocker, int robot, long state,
+            StateEncoding encoding, SlideEngine engine, int distance,
+            int[] path) {
+        int cell = encoding.cell(state, robot);
+        for (int g = 0; g < distance; g++) {
+            int dest = engine.dest(cell, direction(target, blocker, cell),
+                    state, encoding);
+            if (dest == cell
+                    || distance(target, blocker, dest) != distance - g - 1) {
+                return false;
+            }
+            if (path != null) {
+                path[g] = dest;
+            }
+            state = encoding.move(state, robot, dest);
+            cell = dest;
+        }
+        return cell == target;
+    }
+}
@@ -0,0 +1,639 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Breadth first search which keeps its layers on disk instead of the heap.
+ * Every depth is stored as packed states in a number of partition files,
+ * split by the hash of the state. Successors are appended unsorted to the
+ * partition files of the next depth, and duplicates are removed afterwards
+ * one partition at a time: the candidates are sorted in runs which fit into
+ * the memory limit and merged against the sorted files of all previous
+ * depths of the same partition, which together form the visited set. The
+ * heap thus only holds the write buffers and one sorting run.
+ * <p>
+ * No parents are stored; once a solution is found, the path is recovered by
+ * scanning the previous depths for a predecessor of each state on it.
+ *
+ * @author Markus Schepke
+ */
+class ExternalSearch {
+
+    /** the number of bytes mapped at once when reading a file */
+    private static final int    WINDOW = 1 << 24;
+    /** files up to this size are read at once instead of being mapped */
+    private static final int    SMALL  = 1 << 16;
+
+    private final SlideEngine   engine;
+    private final StateEncoding encoding;
+    private final int           targetRobot;
+    private final int           targetCell;
+    private final boolean       symmetric;
+    private final SolverStats   stats;
+    private final File          scratchDirectory;
+    private final int           partitions;
+    private final long          diskLimit;
+    private final ByteBuffer[]  buffers;
+    private final ByteBuffer    spare;
+    private final int           maxRun;
+    private long[]              run    = new long[1 << 12];
+
+    private Path                directory;
+    private long                diskUsage;
+    private boolean             timedOut;
+    private boolean             diskFull;
+
+    ExternalSearch(SlideEngine engine, StateEncoding encoding,
+            int targetRobot, int targetCell, boolean symmetric,
+            SolverOptions options, SolverStats stats) {
+        this.engine = engine;
+        this.encoding = encoding;
+        this.targetRobot = targetRobot;
+        this.targetCell = targetCell;
+        this.symmetric = symmetric;
+        this.stats = stats;
+        this.scratchDirectory = options.getScratchDirectory();
+        this.partitions = options.getPartitions();
+        this.diskLimit = options.getDiskLimit();
+        // at most half of the memory for the write buffers, the rest for
+        // sorting
+        long memory = options.getMemoryLimit();
+        int bufferBytes = (int) Math.max(1 << 12,
+                Math.min(1 << 16, memory / 2 / (partitions + 1)) & ~7L);
+        this.buffers = new ByteBuffer[partitions];
+        for (int p = 0; p < partitions; p++) {
+            buffers[p] = ByteBuffer.allocate(bufferBytes);
+        }
+        this.spare = ByteBuffer.allocate(bufferBytes);
+        this.maxRun = (int) Math.max(1 << 12, Math.min(Integer.MAX_VALUE - 8,
+                (memory - (long) (partitions + 1) * bufferBytes) / 8));
+    }
+
+    /**
+     * @return the states along an optimal solution, starting with the initial
+     *         one, or null if there is none within the given limits
+     * @throws UncheckedIOException
+     *             if the scratch files cannot be written or read
+     */
+    long[] solve(long initial, int maxMoves, double maxTime) {
+        long end = (long) (System.nanoTime() + maxTime * 1e9);
+
+        if (encoding.cell(initial, targetRobot) == targetCell) {
+            return new long[] { initial };
+        }
+
+        try {
+            directory = Files.createTempDirectory(scratchDirectory.toPath(),
+                    "ricochet");
+            try {
+                return search(initial, maxMoves, end);
+            } catch (DiskLimitException e) {
+                diskFull = true;
+                return null;
+            } finally {
+                delete(directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if the last search was stopped by the time limit
+     */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return true if the last search was stopped by the disk limit
+     */
+    boolean isDiskFull() {
+        return diskFull;
+    }
+
+    private long[] search(long initial, int maxMoves, long end)
+            throws IOException {
+        RecordWriter first = new RecordWriter(layer(0, partition(initial)),
+                spare);
+        first.write(initial);
+        first.close();
+        stats.depth(0);
+        long visited = 1;
+
+        int[] dests = new int[Board.DIRECTIONS.length];
+        for (int depth = 0; depth < maxMoves; depth++) {
+            SolverEvents.Depth event = beginDepth();
+            RecordWriter[] candidates = new RecordWriter[partitions];
+            for (int p = 0; p < partitions; p++) {
+                candidates[p] = new RecordWriter(candidates(p), buffers[p]);
+            }
+            long found = 0, foundParent = 0;
+            boolean solved = false;
+            try {
+                expand: for (int p = 0; p < partitions; p++) {
+                    RecordReader reader = new RecordReader(layer(depth, p));
+                    try {
+                        while (reader.hasNext()) {
+                            long state = reader.next();
+                            if ((stats.getExpanded() & 0xFFF) == 0
+                                    && System.nanoTime() >= end) {
+                                timedOut = true;
+                                commitDepth(event, depth, 0, 0);
+                                return null;
+                            }
+                            stats.expanded();
+                            for (int i = 0; i < encoding.getNumberRobots(); i++) {
+                                int count = engine.reachable(i, state,
+                                        encoding, dests);
+                                for (int d = 0; d < count; d++) {
+                                    long child = child(state, i, dests[d]);
+                                    stats.generated();
+                                    if (i == targetRobot
+                                            && dests[d] == targetCell) {
+                                        found = child;
+                                        foundParent = state;
+                                        solved = true;
+                                        break expand;
+                                    }
+                                    candidates[partition(child)].write(child);
+                                }
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+            } finally {
+                for (RecordWriter writer : candidates) {
+                    writer.close();
+                }
+            }
+
+            if (solved) {
+                commitDepth(event, depth, 0, 0);
+                stats.visited(visited);
+                return path(found, foundParent, depth);
+            }
+
+            long size = 0;
+            for (int p = 0; p < partitions; p++) {
+                if (System.nanoTime() >= end) {
+                    timedOut = true;
+                    commitDepth(event, depth, size, 0);
+                    return null;
+                }
+                size += deduplicate(depth + 1, p);
+            }
+            commitDepth(event, depth, size, stats.getGenerated()
+                    - event.generated - size);
+            visited += size;
+            stats.depth(depth + 1, size);
+            stats.frontier((int) Math.min(Integer.MAX_VALUE, size));
+            stats.visited(visited);
+            if (size == 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts the flight recorder event of a depth, keeping the current
+     * counters in it until it is committed.
+     */
+    private SolverEvents.Depth beginDepth() {
+        SolverEvents.Depth event = new SolverEvents.Depth();
+        if (event.isEnabled()) {
+            event.expanded = stats.getExpanded();
+            event.generated = stats.getGenerated();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * @param duplicates
+     *            the number of candidates dropped by duplicate detection, 0
+     *            if the depth was not completed
+     */
+    private void commitDepth(SolverEvents.Depth event, int depth,
+            long frontier, long duplicates) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.board = SolverEvents.board(encoding.getBoard());
+            event.depth = depth;
+            event.expanded = stats.getExpanded() - event.expanded;
+            event.generated = stats.getGenerated() - event.generated;
+            event.duplicates = duplicates;
+            event.frontier = frontier;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sorts the candidates of a partition and writes those not seen at any
+     * previous depth as the partition's file of the given depth.
+     *
+     * @return the number of new states
+     */
+    private long deduplicate(int depth, int partition) throws IOException {
+        Path candidates = candidates(partition);
+        List<Closeable> open = new ArrayList<Closeable>();
+        List<Path> runs = new ArrayList<Path>();
+        try {
+            // sorted runs of unique candidates
+            LongCursor fresh;
+            RecordReader reader = new RecordReader(candidates);
+            open.add(reader);
+            int length = fill(reader);
+            if (!reader.hasNext()) {
+                fresh = new ArrayCursor(run, length);
+            } else {
+                List<LongCursor> cursors = new ArrayList<LongCursor>();
+                do {
+                    Path path = directory.resolve("run-" + runs.size()
+                            + ".bin");
+                    runs.add(path);
+                    RecordWriter writer = new RecordWriter(path, spare);
+                    for (int i = 0; i < length; i++) {
+                        writer.write(run[i]);
+                    }
+                    writer.close();
+                    length = fill(reader);
+                } while (length > 0);
+                for (Path path : runs) {
+                    RecordReader runReader = new RecordReader(path);
+                    open.add(runReader);
+                    cursors.add(runReader);
+                }
+                fresh = new MergeCursor(cursors);
+            }
+
+            // the visited set are the sorted files of all previous depths
+            List<LongCursor> layers = new ArrayList<LongCursor>();
+            for (int d = 0; d < depth; d++) {
+                RecordReader layerReader = new RecordReader(layer(d, partition));
+                open.add(layerReader);
+                layers.add(layerReader);
+            }
+            LongCursor seen = new MergeCursor(layers);
+
+            long count = 0, previous = 0;
+            boolean any = false;
+            RecordWriter writer = new RecordWriter(layer(depth, partition),
+                    spare);
+            try {
+                while (fresh.hasNext()) {
+                    long state = fresh.next();
+                    if (any && state == previous) {
+                        stats.duplicate();
+                        continue;
+                    }
+                    any = true;
+                    previous = state;
+                    while (seen.hasNext() && seen.peek() < state) {
+                        seen.next();
+                    }
+                    if (seen.hasNext() && seen.peek() == state) {
+                        stats.duplicate();
+                        continue;
+                    }
+                    writer.write(state);
+                    count++;
+                }
+            } finally {
+                writer.close();
+            }
+            return count;
+        } finally {
+            for (Closeable closeable : open) {
+                closeable.close();
+            }
+            for (Path path : runs) {
+                remove(path);
+            }
+            remove(candidates);
+        }
+    }
+
+    /**
+     * Reads as many states as fit into the memory limit into {@link #run},
+     * sorted.
+     *
+     * @return the number of states read
+     */
+    private int fill(RecordReader reader) throws IOException {
+        int length = 0;
+        while (reader.hasNext()) {
+            if (length == run.length) {
+                if (length == maxRun) {
+                    break;
+                }
+                run = Arrays.copyOf(run, (int) Math.min(maxRun, 2L * length));
+            }
+            run[length++] = reader.next();
+        }
+        Arrays.sort(run, 0, length);
+        return length;
+    }
+
+    /**
+     * Recovers the path to a solution found while expanding the given depth
+     * by searching every previous depth for a predecessor.
+     */
+    private long[] path(long found, long parent, int depth) throws IOException {
+        long[] path = new long[depth + 2];
+        path[depth + 1] = found;
+        path[depth] = parent;
+        int[] dests = new int[Board.DIRECTIONS.length];
+        for (int d = depth - 1; d >= 0; d--) {
+            long next = path[d + 1];
+            search: for (int p = 0; p < partitions; p++) {
+                RecordReader reader = new RecordReader(layer(d, p));
+                try {
+                    while (reader.hasNext()) {
+                        long state = reader.next();
+                        for (int i = 0; i < encoding.getNumberRobots(); i++) {
+                            int count = engine.reachable(i, state, encoding,
+                                    dests);
+                            for (int k = 0; k < count; k++) {
+                                if (child(state, i, dests[k]) == next) {
+                                    path[d] = state;
+                                    break search;
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        }
+        return path;
+    }
+
+    private long child(long state, int robot, int cell) {
+        long result = encoding.move(state, robot, cell);
+        return symmetric ? encoding.canonical(result, targetRobot) : result;
+    }
+
+    private int partition(long state) {
+        return Math.floorMod(StateEncoding.hash(state), partitions);
+    }
+
+    private Path layer(int depth, int partition) {
+        return directory.resolve("layer-" + depth + "-" + partition + ".bin");
+    }
+
+    private Path candidates(int partition) {
+        return directory.resolve("candidates-" + partition + ".bin");
+    }
+
+    private void remove(Path path) throws IOException {
+        if (Files.exists(path)) {
+            diskUsage -= Files.size(path);
+            Files.delete(path);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * A sorted sequence of states.
+     */
+    private interface LongCursor {
+        boolean hasNext() throws IOException;
+
+        long peek() throws IOException;
+
+        long next() throws IOException;
+    }
+
+    private static class ArrayCursor implements LongCursor {
+        private final long[] values;
+        private final int    length;
+        private int          index;
+
+        private ArrayCursor(long[] values, int length) {
+            this.values = values;
+            this.length = length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < length;
+        }
+
+        @Override
+        public long peek() {
+            return values[index];
+        }
+
+        @Override
+        public long next() {
+            return values[index++];
+        }
+    }
+
+    /**
+     * Merges sorted cursors into one sorted sequence.
+     */
+    private static class MergeCursor implements LongCursor {
+        private final PriorityQueue<LongCursor> queue;
+
+        private MergeCursor(List<LongCursor> cursors) throws IOException {
+            queue = new PriorityQueue<LongCursor>(Math.max(1, cursors.size()),
+                    (a, b) -> {
+                        try {
+                            return Long.compare(a.peek(), b.peek());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            for (LongCursor cursor : cursors) {
+                if (cursor.hasNext()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public long peek() throws IOException {
+            return queue.peek().peek();
+        }
+
+        @Override
+        public long next() throws IOException {
+            LongCursor cursor = queue.poll();
+            long value = cursor.next();
+            if (cursor.hasNext()) {
+                queue.add(cursor);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Reads the states of a file through memory mapped windows. Small files
+     * are read into the heap at once, since mapping costs more than copying
+     * them, and a missing file is read as an empty one.
+     */
+    private static class RecordReader implements LongCursor, Closeable {
+        private final FileChannel channel;
+        private final long        size;
+        private long              position;
+        private LongBuffer        window;
+
+        private RecordReader(Path path) throws IOException {
+            FileChannel channel = Files.exists(path) ? FileChannel.open(path,
+                    StandardOpenOption.READ) : null;
+            size = channel == null ? 0 : channel.size();
+            if (channel != null && size <= SMALL) {
+                try {
+                    ByteBuffer bytes = ByteBuffer.allocate((int) size);
+                    while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    }
+                    bytes.flip();
+                    window = bytes.asLongBuffer();
+                    position = size;
+                } finally {
+                    channel.close();
+                }
+                channel = null;
+            }
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            if (window != null && window.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            long length = Math.min(WINDOW, size - position);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position, length);
+            position += length;
+            window = mapped.asLongBuffer();
+            return window.hasRemaining();
+        }
+
+        @Override
+        public long peek() throws IOException {
+            hasNext();
+            return window.get(window.position());
+        }
+
+        @Override
+        public long next() throws IOException {
+            hasNext();
+            return window.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Appends states to a file through a buffer, keeping track of the disk
+     * space used by the search. The file is only created once there is
+     * something to write.
+     */
+    private class RecordWriter implements Closeable {
+        private final Path       path;
+        private final ByteBuffer buffer;
+        private FileChannel      channel;
+        private boolean          closed;
+
+        /**
+         * @param buffer
+         *            the buffer to use, which must not be shared with another
+         *            open writer
+         */
+        private RecordWriter(Path path, ByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+            buffer.clear();
+        }
+
+        private void write(long state) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putLong(state);
+        }
+
+        private void flush() throws IOException {
+            diskUsage += buffer.position();
+            if (diskUsage > diskLimit) {
+                throw new DiskLimitException();
+            }
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (buffer.position() > 0) {
+                    flush();
+                }
+            } finally {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private static class DiskLimitException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
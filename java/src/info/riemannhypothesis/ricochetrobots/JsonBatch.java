@@ -0,0 +1,128 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves a stream of puzzles given as JSON lines, one request per line in
+ * the format of {@link RequestSolver}, and writes one result per line in the
+ * order of the input. The puzzles are solved on a pool of worker threads,
+ * but only a few of them per worker are read ahead, so the memory needed does
+ * not grow with the length of the input. Boards can be given by id or by the
+ * path of their file; each is read once and shared by all requests.
+ * Requests which cannot be solved are answered with
+ * <code>{"error": "..."}</code> (and their id, if they have one) in their
+ * place.
+ *
+ * @author Markus Schepke
+ */
+public class JsonBatch {
+
+    /** the number of requests read ahead per worker */
+    private static final int    READ_AHEAD = 4;
+
+    private final RequestSolver solver;
+    private final int           threads;
+
+    /**
+     * @param boardDirectory
+     *            the directory boards given by id are read from
+     * @param endgameDirectory
+     *            the directory of the endgame databases, or null to solve
+     *            without them
+     * @param options
+     *            the settings and upper limits for all requests
+     * @param threads
+     *            the number of puzzles solved at the same time
+     */
+    public JsonBatch(File boardDirectory, File endgameDirectory,
+            SolverOptions options, int threads) {
+        this(boardDirectory, null, endgameDirectory, options, threads);
+    }
+
+    /**
+     * @param library
+     *            the library boards are looked up in before the board
+     *            directory, or null
+     */
+    public JsonBatch(File boardDirectory, BoardLibrary library,
+            File endgameDirectory, SolverOptions options, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Illegal threads: " + threads);
+        }
+        this.solver = new RequestSolver(boardDirectory, library,
+                endgameDirectory, options, true);
+        this.threads = threads;
+    }
+
+    /**
+     * Solves all requests from the reader and writes the results to the
+     * writer, which is flushed whenever the next result is not ready yet.
+     *
+     * @return the number of results written
+     */
+    public long run(BufferedReader in, Writer out) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        long count = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final String record = line;
+                pending.add(workers.submit(() -> answer(record)));
+                if (pending.size() >= READ_AHEAD * threads) {
+                    write(pending.poll(), out);
+                    count++;
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), out);
+                count++;
+            }
+            out.flush();
+        } finally {
+            workers.shutdownNow();
+        }
+        return count;
+    }
+
+    private String answer(String record) {
+        Map<String, Object> request = null;
+        try {
+            request = Json.parseObject(record);
+            return Json.write(solver.solve(request));
+        } catch (IllegalArgumentException e) {
+            return Json.write(RequestSolver.error(request, e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            return Json.write(RequestSolver.error(request, e.toString()));
+        }
+    }
+
+    private static void write(Future<String> result, Writer out)
+            throws IOException {
+        if (!result.isDone()) {
+            out.flush();
+        }
+        try {
+            out.write(result.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        out.write('\n');
+    }
+}
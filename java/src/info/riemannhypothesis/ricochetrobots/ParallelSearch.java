@@ -0,0 +1,248 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Level synchronous breadth first search on a {@link ForkJoinPool}. The
+ * frontier of each depth is cut into chunks which are expanded in parallel,
+ * sharing one {@link ConcurrentStateTable} of visited states. A depth is
+ * only started once the previous one has been completed, so the first
+ * solution found is an optimal one.
+ *
+ * @author Markus Schepke
+ */
+class ParallelSearch {
+
+    private final SlideEngine          engine;
+    private final StateEncoding        encoding;
+    private final int                  targetRobot;
+    private final int                  targetCell;
+    private final boolean              symmetric;
+    private final int                  threads;
+    private final ForkJoinPool         sharedPool;
+    private final int                  chunkSize;
+    private final ConcurrentStateTable visited;
+    private final SolverStats          stats;
+
+    private volatile long              found;
+    private volatile int               foundParent = -1;
+    private volatile boolean           timedOut;
+
+    ParallelSearch(SlideEngine engine, StateEncoding encoding,
+            int targetRobot, int targetCell, boolean symmetric,
+            SolverOptions options, SolverStats stats) {
+        this.engine = engine;
+        this.encoding = encoding;
+        this.targetRobot = targetRobot;
+        this.targetCell = targetCell;
+        this.symmetric = symmetric;
+        this.sharedPool = options.getPool();
+        this.threads = sharedPool != null ? sharedPool.getParallelism()
+                : options.getThreads();
+        this.chunkSize = options.getChunkSize();
+        this.stats = stats;
+        this.visited = new ConcurrentStateTable(4 * threads,
+                options.getTableCapacity(), options.getLoadFactor());
+    }
+
+    /**
+     * @param initial
+     *            the initial configuration of the robots
+     * @return the states along an optimal solution, starting with the initial
+     *         one, or null if there is none within the given limits
+     */
+    long[] solve(long initial, int maxMoves, double maxTime) {
+        long end = (long) (System.nanoTime() + maxTime * 1e9);
+
+        if (encoding.cell(initial, targetRobot) == targetCell) {
+            return new long[] { initial };
+        }
+
+        List<long[]> levels = new ArrayList<long[]>();
+        List<int[]> parents = new ArrayList<int[]>();
+        levels.add(new long[] { initial });
+        parents.add(new int[] { -1 });
+        visited.add(initial);
+        stats.depth(0);
+
+        ForkJoinPool pool = sharedPool != null ? sharedPool
+                : new ForkJoinPool(threads);
+        try {
+            for (int depth = 0; depth < maxMoves; depth++) {
+                long[] frontier = levels.get(depth);
+                if (frontier.length == 0) {
+                    break;
+                }
+
+                SolverEvents.Depth event = new SolverEvents.Depth();
+                event.begin();
+                List<Expansion> chunks = new ArrayList<Expansion>();
+                for (int from = 0; from < frontier.length; from += chunkSize) {
+                    chunks.add(new Expansion(frontier, from, Math.min(
+                            frontier.length, from + chunkSize), end));
+                }
+                pool.invoke(new Level(chunks));
+                stats.expanded(frontier.length);
+                stats.frontier(frontier.length);
+
+                int size = 0;
+                for (Expansion chunk : chunks) {
+                    size += chunk.size;
+                    stats.generated(chunk.generated);
+                    stats.duplicates(chunk.duplicates);
+                }
+                commitDepth(event, depth, frontier.length, chunks, size);
+
+                if (foundParent >= 0) {
+                    long[] path = new long[depth + 2];
+                    path[depth + 1] = found;
+                    for (int d = depth, index = foundParent; d >= 0; d--) {
+                        path[d] = levels.get(d)[index];
+                        index = parents.get(d)[index];
+                    }
+                    return path;
+                }
+                if (timedOut) {
+                    break;
+                }
+
+                stats.depth(depth + 1, size);
+                long[] next = new long[size];
+                int[] nextParents = new int[size];
+                int offset = 0;
+                for (Expansion chunk : chunks) {
+                    System.arraycopy(chunk.states, 0, next, offset, chunk.size);
+                    System.arraycopy(chunk.parents, 0, nextParents, offset,
+                            chunk.size);
+                    offset += chunk.size;
+                }
+                levels.add(next);
+                parents.add(nextParents);
+            }
+        } finally {
+            if (pool != sharedPool) {
+                pool.shutdown();
+            }
+        }
+
+        return null;
+    }
+
+    private void commitDepth(SolverEvents.Depth event, int depth,
+            int expanded, List<Expansion> chunks, int frontier) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.board = SolverEvents.board(encoding.getBoard());
+            event.depth = depth;
+            event.expanded = expanded;
+            for (Expansion chunk : chunks) {
+                event.generated += chunk.generated;
+                event.duplicates += chunk.duplicates;
+            }
+            event.frontier = frontier;
+            event.commit();
+        }
+    }
+
+    private static class Level extends RecursiveAction {
+        private static final long     serialVersionUID = 1L;
+
+        private final List<Expansion> chunks;
+
+        private Level(List<Expansion> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(chunks);
+        }
+    }
+
+    /**
+     * Expands one slice of the frontier into a local buffer of new states.
+     */
+    private class Expansion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[]      frontier;
+        private final int         from, to;
+        private final long        end;
+
+        private long[]            states;
+        private int[]             parents;
+        private int               size;
+        private long              generated;
+        private long              duplicates;
+
+        private Expansion(long[] frontier, int from, int to, long end) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.end = end;
+            this.states = new long[4 * (to - from)];
+            this.parents = new int[states.length];
+        }
+
+        @Override
+        protected void compute() {
+            int[] dests = new int[Board.DIRECTIONS.length];
+            int numberRobots = encoding.getNumberRobots();
+            for (int index = from; index < to; index++) {
+                if (foundParent >= 0 || timedOut) {
+                    return;
+                }
+                if (((index - from) & 0x3FF) == 0
+                        && System.nanoTime() >= end) {
+                    timedOut = true;
+                    return;
+                }
+                long state = frontier[index];
+                for (int i = 0; i < numberRobots; i++) {
+                    int count = engine.reachable(i, state, encoding, dests);
+                    for (int d = 0; d < count; d++) {
+                        long child = encoding.move(state, i, dests[d]);
+                        if (symmetric) {
+                            child = encoding.canonical(child, targetRobot);
+                        }
+                        generated++;
+                        if (!visited.add(child)) {
+                            duplicates++;
+                            continue;
+                        }
+                        if (i == targetRobot && dests[d] == targetCell) {
+                            solved(child, index);
+                            return;
+                        }
+                        if (size == states.length) {
+                            states = Arrays.copyOf(states, 2 * size);
+                            parents = Arrays.copyOf(parents, 2 * size);
+                        }
+                        states[size] = child;
+                        parents[size] = index;
+                        size++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of states visited by the last search
+     */
+    int visited() {
+        return visited.size();
+    }
+
+    private synchronized void solved(long state, int parent) {
+        if (foundParent < 0) {
+            found = state;
+            foundParent = parent;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A single task on a board: the starting positions of the robots, the target
+ * and the robot which has to reach it.
+ *
+ * @author Markus Schepke
+ */
+public class Puzzle {
+
+    private final Point[] positions;
+    private final Point   target;
+    private final int     targetRobot;
+
+    public Puzzle(Point[] positions, Point target, int targetRobot) {
+        if (targetRobot < 0 || targetRobot >= positions.length) {
+            throw new IllegalArgumentException("Illegal target robot: "
+                    + targetRobot);
+        }
+        this.positions = positions.clone();
+        this.target = target;
+        this.targetRobot = targetRobot;
+    }
+
+    /**
+     * Draws a puzzle from the given source: the robots are placed on distinct
+     * random cells and the target is one of the board's targets, or any cell
+     * if the board has none. A seeded source always yields the same puzzle.
+     */
+    public static Puzzle random(Board board, int numberRobots, Random random) {
+        String[] labels = new String[numberRobots];
+        for (int i = 0; i < numberRobots; i++) {
+            labels[i] = Integer.toString(i + 1, 10);
+        }
+        Robot[] robots = Robot.robotSet(board.getWidth(), board.getHeight(),
+                labels, new Color[numberRobots], random);
+        Point[] positions = new Point[numberRobots];
+        for (int i = 0; i < numberRobots; i++) {
+            positions[i] = robots[i].getPosition();
+        }
+
+        List<Point> targets = sortedTargets(board);
+        Point target = targets.isEmpty() ? new Point(
+                random.nextInt(board.getWidth()),
+                random.nextInt(board.getHeight())) : targets.get(random
+                .nextInt(targets.size()));
+        return new Puzzle(positions, target, random.nextInt(numberRobots));
+    }
+
+    /**
+     * @return the board's targets in reading order, since the iteration order
+     *         of the set must not influence a seeded choice
+     */
+    private static List<Point> sortedTargets(Board board) {
+        List<Point> targets = new ArrayList<Point>(board.getTargets());
+        Collections.sort(targets, new Comparator<Point>() {
+            @Override
+            public int compare(Point p, Point q) {
+                return p.y != q.y ? p.y - q.y : p.x - q.x;
+            }
+        });
+        return targets;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             if a robot or the target lies outside the board or two
+     *             robots share a cell
+     */
+    public void check(Board board) {
+        Set<Point> used = new HashSet<Point>();
+        for (Point p : positions) {
+            if (!board.contains(p) || !used.add(p)) {
+                throw new IllegalArgumentException("Illegal robot position "
+                        + p + " in puzzle " + this);
+            }
+        }
+        if (!board.contains(target)) {
+            throw new IllegalArgumentException("Illegal target " + target
+                    + " in puzzle " + this);
+        }
+    }
+
+    public Point[] getPositions() {
+        return positions.clone();
+    }
+
+    public Point getTarget() {
+        return target;
+    }
+
+    public int getTargetRobot() {
+        return targetRobot;
+    }
+
+    public int getNumberRobots() {
+        return positions.length;
+    }
+
+    /**
+     * @return new robots on the starting positions, labelled by their number
+     */
+    public Robot[] robots() {
+        Robot[] robots = new Robot[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            robots[i] = new Robot(Integer.toString(i + 1, 10), null,
+                    new Point(positions[i].x, positions[i].y));
+        }
+        return robots;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("robot ").append(targetRobot).append(" to ").append(target)
+                .append(" from");
+        for (Point p : positions) {
+            sb.append(' ').append(p);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,237 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a board file in a single pass: the grid, its targets and the robot
+ * definitions, and then any number of scenarios, which are only read one at
+ * a time while they are iterated, so files with very many of them never sit
+ * in memory as a whole.
+ * <p>
+ * After the grid come the robot definitions, one per line with exactly three
+ * fields: the symbol marking the robot's cell in the grid, its label and its
+ * color in hex, e.g. <code>R Red FF0000</code>. Each scenario is a line of
+ * the form <code>tx ty robot x1 y1 ... xn yn</code> just like in a
+ * {@link Corpus}: the target, the index of the robot which has to reach it
+ * and the cells of all robots, in the order of their definitions if there
+ * are any. Empty lines and lines starting with <code>#</code> are skipped.
+ *
+ * @author Markus Schepke
+ */
+public class PuzzleFile implements Iterable<Puzzle>, Closeable {
+
+    private final BufferedReader reader;
+    private final Board          board;
+    /** the robots defined in the file, with their cells in the grid */
+    private final Robot[]        robots;
+
+    private String               pending;
+    private int                  lineNumber;
+    private boolean              iterated;
+
+    public static PuzzleFile open(File file) throws IOException {
+        return new PuzzleFile(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the grid and the robot definitions, leaving the scenarios to
+     * the iterator.
+     *
+     * @throws IOException
+     *             if the grid cannot be read
+     * @throws IllegalArgumentException
+     *             if the color of a robot is malformed
+     */
+    public PuzzleFile(Reader in) throws IOException {
+        this.reader = in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in);
+        char[][] input = Board.readGrid(reader);
+        this.board = new Board(input);
+        this.lineNumber = input[0].length + 1;
+
+        List<Robot> robots = new ArrayList<Robot>();
+        String line;
+        while ((line = nextLine()) != null) {
+            String[] info = line.split("\\s+");
+            if (info.length != 3) {
+                pending = line;
+                break;
+            }
+            try {
+                robots.add(new Robot(info[1], new Color(Integer.parseInt(
+                        info[2], 16)), find(input, info[0].charAt(0))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Illegal color " + info[2]
+                        + ", line " + lineNumber);
+            }
+        }
+        this.robots = robots.isEmpty() ? null : robots
+                .toArray(new Robot[robots.size()]);
+    }
+
+    /**
+     * @return the next line which is neither empty nor a comment, trimmed,
+     *         or null at the end
+     */
+    private String nextLine() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the cell marked with the symbol, or null if there is none
+     */
+    private static Point find(char[][] input, char symbol) {
+        for (int y = 0; y < input[0].length; y += 2) {
+            for (int x = 0; x < input.length; x += 2) {
+                if (input[x][y] == symbol) {
+                    return new Point(x / 2, y / 2);
+                }
+            }
+        }
+        return null;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * @return the robots as defined in the file, on the cells marked in the
+     *         grid, or null if there are no definitions
+     * @throws IllegalArgumentException
+     *             if the symbol of a robot does not appear in the grid
+     */
+    public Robot[] getRobots() {
+        if (robots == null) {
+            return null;
+        }
+        Robot[] result = new Robot[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            Point position = robots[i].getPosition();
+            if (position == null) {
+                throw new IllegalArgumentException("Robot "
+                        + robots[i].getLabel() + " is not on the board");
+            }
+            result[i] = new Robot(robots[i].getLabel(), robots[i].getColor(),
+                    new Point(position.x, position.y));
+        }
+        return result;
+    }
+
+    /**
+     * @return the robots of the file placed as in the scenario, or those of
+     *         the scenario itself if the file defines none
+     */
+    public Robot[] robots(Puzzle puzzle) {
+        if (robots == null) {
+            return puzzle.robots();
+        }
+        Point[] positions = puzzle.getPositions();
+        Robot[] result = new Robot[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            result[i] = new Robot(robots[i].getLabel(), robots[i].getColor(),
+                    positions[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return whether any scenarios follow the robot definitions, before
+     *         they are iterated
+     */
+    public boolean hasScenarios() throws IOException {
+        if (pending == null && !iterated) {
+            pending = nextLine();
+        }
+        return pending != null;
+    }
+
+    /**
+     * Streams the scenarios of the file; it can only be iterated once. A
+     * malformed scenario throws an {@link IllegalArgumentException}, a
+     * failure to read one an {@link UncheckedIOException}.
+     */
+    @Override
+    public Iterator<Puzzle> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Scenarios already iterated");
+        }
+        iterated = true;
+        return new Iterator<Puzzle>() {
+            @Override
+            public boolean hasNext() {
+                if (pending == null) {
+                    try {
+                        pending = nextLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return pending != null;
+            }
+
+            @Override
+            public Puzzle next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String line = pending;
+                pending = null;
+                return scenario(line);
+            }
+        };
+    }
+
+    private Puzzle scenario(String line) {
+        String[] fields = line.split("\\s+");
+        int numberRobots = (fields.length - 3) / 2;
+        if (fields.length < 5 || fields.length % 2 == 0
+                || (robots != null && numberRobots != robots.length)) {
+            throw new IllegalArgumentException("Illegal scenario, line "
+                    + lineNumber + ": " + line);
+        }
+        try {
+            Point target = new Point(Integer.parseInt(fields[0], 10),
+                    Integer.parseInt(fields[1], 10));
+            int targetRobot = Integer.parseInt(fields[2], 10);
+            Point[] positions = new Point[numberRobots];
+            for (int i = 0; i < numberRobots; i++) {
+                positions[i] = new Point(Integer.parseInt(fields[3 + 2 * i],
+                        10), Integer.parseInt(fields[4 + 2 * i], 10));
+            }
+            Puzzle puzzle = new Puzzle(positions, target, targetRobot);
+            puzzle.check(board);
+            return puzzle;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Illegal scenario, line "
+                    + lineNumber + ": " + line, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,500 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One of the four square tiles a board is made of. A quadrant is defined in
+ * the orientation of the top left tile, i.e., with the board's edges on its
+ * left and top and the seams to the other tiles on its right and bottom, and
+ * is turned clockwise by a quarter for each position further round the
+ * board: top left, top right, bottom right, bottom left.
+ * <p>
+ * Its walls and targets are parsed once, and for each of the four rotations
+ * the open directions, the targets and the slides within the quadrant are
+ * computed on construction, so {@link #compose(Quadrant[], int[])} only has
+ * to join the tables of four quadrants along the seams to build a board.
+ * <p>
+ * The text format is that of a board of the quadrant's size, with an extra
+ * column and row for the seams: a <code>|</code> after the last cell of a row
+ * is a wall on its right, a <code>-</code> in the line after the last row a
+ * wall below the cell above it.
+ *
+ * @author Markus Schepke
+ */
+public class Quadrant {
+
+    /** the position index of the quadrants by row and column of the board */
+    private static final int[][] POSITIONS = new int[][] { { 0, 1 }, { 3, 2 } };
+
+    private final int            size;
+    /** the open directions of each cell, per rotation */
+    private final byte[][]       tiles;
+    /** the targets as cells, per rotation */
+    private final int[][]        targets;
+    /** the cell a slide stops on within the quadrant, per rotation */
+    private final int[][]        slides;
+
+    /**
+     * @param tiles
+     *            the open directions of each cell in reading order in the
+     *            orientation of the top left quadrant, see
+     *            {@link Board#tile(int)}; those across the seams only count
+     *            if the neighbouring quadrant is open as well
+     */
+    private Quadrant(int size, byte[] tiles, int[] targets) {
+        this.size = size;
+        this.tiles = new byte[4][];
+        this.targets = new int[4][];
+        this.slides = new int[4][];
+        this.tiles[0] = tiles;
+        this.targets[0] = targets;
+        for (int r = 1; r < 4; r++) {
+            this.tiles[r] = rotate(this.tiles[r - 1]);
+            this.targets[r] = new int[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                this.targets[r][i] = rotate(this.targets[r - 1][i]);
+            }
+        }
+        for (int r = 0; r < 4; r++) {
+            this.slides[r] = slides(this.tiles[r]);
+        }
+    }
+
+    /**
+     * Reads a quadrant in the text format described above.
+     *
+     * @throws IOException
+     *             if it cannot be read or is not square
+     */
+    public Quadrant(InputStream is) throws IOException {
+        this(read(new BufferedReader(new InputStreamReader(is))));
+    }
+
+    private Quadrant(char[][] input) {
+        this(input.length / 2, tiles(input), targets(input));
+    }
+
+    private static char[][] read(BufferedReader br) throws IOException {
+        try {
+            String line = br.readLine();
+            String[] dims = line == null ? new String[0] : line.trim()
+                    .split("\\s+");
+            int size;
+            try {
+                size = Integer.parseInt(dims[0], 10);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Illegal quadrant dimensions: " + line);
+            }
+            if (dims.length != 2 || !dims[0].equals(dims[1]) || size < 1) {
+                throw new IOException("Illegal quadrant dimensions: " + line);
+            }
+            char[][] input = new char[2 * size][2 * size];
+            for (int y = 0; y < 2 * size; y++) {
+                line = br.readLine();
+                if (line == null && y < 2 * size - 1) {
+                    throw new IOException("Quadrant ends after " + y
+                            + " lines");
+                }
+                for (int x = 0; line != null && x < 2 * size
+                        && x < line.length(); x++) {
+                    input[x][y] = line.charAt(x);
+                }
+            }
+            return input;
+        } finally {
+            br.close();
+        }
+    }
+
+    private static byte[] tiles(char[][] input) {
+        int size = input.length / 2;
+        byte[] tiles = new byte[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int tile = 0;
+                if (input[2 * x + 1][2 * y] != '|') {
+                    tile |= 1 << Board.RIGHT;
+                }
+                if (y > 0 && input[2 * x][2 * y - 1] != '-') {
+                    tile |= 1 << Board.UP;
+                }
+                if (x > 0 && input[2 * x - 1][2 * y] != '|') {
+                    tile |= 1 << Board.LEFT;
+                }
+                if (input[2 * x][2 * y + 1] != '-') {
+                    tile |= 1 << Board.DOWN;
+                }
+                tiles[y * size + x] = (byte) tile;
+            }
+        }
+        return tiles;
+    }
+
+    private static int[] targets(char[][] input) {
+        int size = input.length / 2;
+        List<Integer> targets = new ArrayList<Integer>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (input[2 * x][2 * y] == 'X') {
+                    targets.add(y * size + x);
+                }
+            }
+        }
+        int[] result = new int[targets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = targets.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Cuts a quadrant out of a square board and turns it into the
+     * orientation of the top left quadrant, keeping the walls along the
+     * seams.
+     *
+     * @param position
+     *            0 for the top left quadrant, 1 for the top right one, 2 for
+     *            the bottom right one and 3 for the bottom left one
+     */
+    public static Quadrant of(Board board, int position) {
+        int width = board.getWidth();
+        if (width != board.getHeight() || width % 2 != 0) {
+            throw new IllegalArgumentException("Not made of quadrants: "
+                    + width + "x" + board.getHeight());
+        }
+        if (position < 0 || position > 3) {
+            throw new IllegalArgumentException("Illegal position: "
+                    + position);
+        }
+        int size = width / 2;
+        int offsetX = position == 1 || position == 2 ? size : 0;
+        int offsetY = position >= 2 ? size : 0;
+        Set<Point> boardTargets = board.getTargets();
+        byte[] tiles = new byte[size * size];
+        List<Integer> targets = new ArrayList<Integer>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                tiles[y * size + x] = board.tile(board.cell(offsetX + x,
+                        offsetY + y));
+                if (boardTargets.contains(new Point(offsetX + x, offsetY + y))) {
+                    targets.add(y * size + x);
+                }
+            }
+        }
+        int[] cells = new int[targets.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = targets.get(i);
+        }
+        // placed at the position, the quadrant is turned that many times
+        Quadrant placed = new Quadrant(size, tiles, cells);
+        int back = (4 - position) % 4;
+        return new Quadrant(size, placed.tiles[back], placed.targets[back]);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the targets in the orientation of the top left quadrant
+     */
+    public Set<Point> getTargets() {
+        Set<Point> result = new HashSet<Point>();
+        for (int cell : targets[0]) {
+            result.add(new Point(cell % size, cell / size));
+        }
+        return result;
+    }
+
+    /**
+     * @return the cell a quarter turn clockwise
+     */
+    private int rotate(int cell) {
+        int x = cell % size, y = cell / size;
+        return x * size + size - 1 - y;
+    }
+
+    private byte[] rotate(byte[] tiles) {
+        byte[] result = new byte[tiles.length];
+        for (int cell = 0; cell < tiles.length; cell++) {
+            int tile = 0;
+            for (int dir : Board.DIRECTIONS) {
+                if ((tiles[cell] & (1 << dir)) != 0) {
+                    // right turns into down, up into right, and so on
+                    tile |= 1 << ((dir + 3) & 3);
+                }
+            }
+            result[rotate(cell)] = (byte) tile;
+        }
+        return result;
+    }
+
+    /**
+     * @return the slide table within the quadrant, where slides also stop
+     *         at its edges
+     */
+    private int[] slides(byte[] tiles) {
+        int[] result = new int[tiles.length << 2];
+        for (int cell = 0; cell < tiles.length; cell++) {
+            for (int dir : Board.DIRECTIONS) {
+                int x = cell % size, y = cell / size;
+                while ((tiles[y * size + x] & (1 << dir)) != 0) {
+                    int nx = x + Board.OFFSETS_DIR[dir][0];
+                    int ny = y + Board.OFFSETS_DIR[dir][1];
+                    if (nx < 0 || nx >= size || ny < 0 || ny >= size) {
+                        break;
+                    }
+                    x = nx;
+                    y = ny;
+                }
+                result[(cell << 2) | dir] = y * size + x;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a board from four quadrants in their usual rotations, i.e.,
+     * each turned a quarter further than the one before.
+     *
+     * @param quadrants
+     *            the top left, top right, bottom right and bottom left
+     *            quadrant
+     */
+    public static Board compose(Quadrant... quadrants) {
+        return compose(quadrants, new int[] { 0, 1, 2, 3 });
+    }
+
+    /**
+     * Builds a board from four quadrants of the same size. Two neighbouring
+     * cells on different quadrants are connected if neither has a wall on
+     * the seam; the slide tables are joined from those of the quadrants
+     * without walking the board again.
+     *
+     * @param quadrants
+     *            the top left, top right, bottom right and bottom left
+     *            quadrant
+     * @param rotations
+     *            the number of clockwise quarter turns of each quadrant
+     *            from its definition
+     */
+    public static Board compose(Quadrant[] quadrants, int[] rotations) {
+        if (quadrants.length != 4 || rotations.length != 4) {
+            throw new IllegalArgumentException("Need four quadrants, got "
+                    + quadrants.length + " with " + rotations.length
+                    + " rotations");
+        }
+        int size = quadrants[0].size;
+        for (Quadrant quadrant : quadrants) {
+            if (quadrant.size != size) {
+                throw new IllegalArgumentException(
+                        "Quadrants of different sizes: " + size + ", "
+                                + quadrant.size);
+            }
+        }
+        int width = 2 * size;
+        int cells = width * width;
+        byte[][] quadrantTiles = new byte[4][];
+        int[][] quadrantSlides = new int[4][];
+        // the cell of each quadrant's cells on the board, and back
+        int[][] global = new int[4][size * size];
+        int[] local = new int[cells];
+        byte[] tiles = new byte[cells];
+        Set<Point> targets = new HashSet<Point>();
+        for (int p = 0; p < 4; p++) {
+            int r = rotations[p] & 3;
+            quadrantTiles[p] = quadrants[p].tiles[r];
+            quadrantSlides[p] = quadrants[p].slides[r];
+            int offset = (p >= 2 ? size * width : 0)
+                    + (p == 1 || p == 2 ? size : 0);
+            for (int y = 0, c = 0; y < size; y++) {
+                for (int x = 0; x < size; x++, c++) {
+                    int cell = offset + y * width + x;
+                    global[p][c] = cell;
+                    local[cell] = c;
+                    tiles[cell] = quadrantTiles[p][c];
+                }
+            }
+            for (int target : quadrants[p].targets[r]) {
+                int cell = global[p][target];
+                targets.add(new Point(cell % width, cell / width));
+            }
+        }
+
+        // close the seams where either side has a wall, and the edges
+        for (int y = 0; y < width; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x % size != 0 && x % size != size - 1 && y % size != 0
+                        && y % size != size - 1) {
+                    // walls inside a quadrant are the same on both sides
+                    continue;
+                }
+                int cell = y * width + x;
+                for (int dir : Board.DIRECTIONS) {
+                    if ((tiles[cell] & (1 << dir)) == 0) {
+                        continue;
+                    }
+                    int nx = x + Board.OFFSETS_DIR[dir][0];
+                    int ny = y + Board.OFFSETS_DIR[dir][1];
+                    if (nx < 0 || nx >= width || ny < 0 || ny >= width
+                            || (tiles[ny * width + nx]
+                                    & (1 << Board.OPPOSITE[dir])) == 0) {
+                        tiles[cell] &= ~(1 << dir);
+                    }
+                }
+            }
+        }
+
+        int[] offsets = new int[4];
+        for (int dir : Board.DIRECTIONS) {
+            offsets[dir] = Board.OFFSETS_DIR[dir][1] * width
+                    + Board.OFFSETS_DIR[dir][0];
+        }
+        int[] slides = new int[cells << 2];
+        for (int p = 0; p < 4; p++) {
+            int[] quadrantSlide = quadrantSlides[p];
+            for (int c = 0; c < size * size; c++) {
+                int cell = global[p][c];
+                for (int dir = 0; dir < 4; dir++) {
+                    int dest = global[p][quadrantSlide[(c << 2) | dir]];
+                    if ((tiles[dest] & (1 << dir)) != 0) {
+                        // stopped on an open seam, so slide on in the next
+                        // quadrant, which ends at the edge of the board
+                        int next = dest + offsets[dir];
+                        int q = POSITIONS[next / width / size][next % width
+                                / size];
+                        dest = global[q][quadrantSlides[q][(local[next] << 2)
+                                | dir]];
+                    }
+                    slides[(cell << 2) | dir] = dest;
+                }
+            }
+        }
+        return new Board(width, width, tiles, targets, slides);
+    }
+
+    /**
+     * @return all ways to place four different quadrants of the list on a
+     *         board, in the order of
+     *         {@link #compose(Quadrant...)}, generated lazily
+     */
+    public static Iterable<Quadrant[]> combinations(
+            final List<Quadrant> quadrants) {
+        return new Iterable<Quadrant[]>() {
+            @Override
+            public Iterator<Quadrant[]> iterator() {
+                return new Iterator<Quadrant[]>() {
+                    private final int[] indices = first();
+
+                    private int[] first() {
+                        int[] indices = new int[] { 0, 1, 2, 3 };
+                        return quadrants.size() < 4 ? null : indices;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return indices != null && indices[0] >= 0;
+                    }
+
+                    @Override
+                    public Quadrant[] next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Quadrant[] result = new Quadrant[4];
+                        for (int i = 0; i < 4; i++) {
+                            result[i] = quadrants.get(indices[i]);
+                        }
+                        advance();
+                        return result;
+                    }
+
+                    /**
+                     * Counts the indices up like the digits of a number,
+                     * skipping any with a digit used twice.
+                     */
+                    private void advance() {
+                        int n = quadrants.size();
+                        int i = 3;
+                        while (i >= 0) {
+                            indices[i]++;
+                            if (indices[i] >= n) {
+                                indices[i] = -1;
+                                i--;
+                                continue;
+                            }
+                            if (used(i)) {
+                                continue;
+                            }
+                            if (i == 3) {
+                                return;
+                            }
+                            i++;
+                        }
+                    }
+
+                    private boolean used(int i) {
+                        for (int j = 0; j < i; j++) {
+                            if (indices[j] == indices[i]) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Splits the given square boards into quadrants and builds every board
+     * they can be combined into.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Quadrant <board.txt>...");
+            return;
+        }
+        List<Quadrant> quadrants = new ArrayList<Quadrant>();
+        for (String file : args) {
+            InputStream in = new FileInputStream(new File(file));
+            Board board;
+            try {
+                board = new Board(in);
+            } finally {
+                in.close();
+            }
+            Quadrant[] parts = new Quadrant[4];
+            for (int p = 0; p < 4; p++) {
+                parts[p] = of(board, p);
+                quadrants.add(parts[p]);
+            }
+            if (compose(parts).fingerprint() != board.fingerprint()) {
+                throw new IllegalStateException("Board " + file
+                        + " differs after composition");
+            }
+        }
+        long start = System.nanoTime();
+        long count = 0, hash = 0;
+        for (Quadrant[] combination : combinations(quadrants)) {
+            hash ^= compose(combination).fingerprint();
+            count++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Built %d boards from %d quadrants in %.3f s "
+                + "(%.1f us per board, checksum %016x).%n", count,
+                quadrants.size(), seconds, seconds * 1e6 / Math.max(count, 1),
+                hash);
+    }
+}
@@ -0,0 +1,301 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Solves puzzles given as JSON objects, for {@link SolverServer} and
+ * {@link JsonBatch}. A request looks like
+ *
+ * <pre>
+ * {"board": "3", "robots": [[0, 0], [5, 7], [9, 2], [12, 15]],
+ *  "target": [4, 6], "robot": 0, "maxMoves": 20, "maxTime": 10,
+ *  "search": "astar", "id": "any value"}
+ * </pre>
+ *
+ * of which <code>robot</code> (default 0), the limits, the search and the
+ * id are optional; the limits can only lower those of the options given on
+ * construction. The result looks like
+ *
+ * <pre>
+ * {"id": "any value", "board": "3", "solved": true, "moves": 3,
+ *  "moveList": ["1-Up", "2-Left", "1-Right"], "timedOut": false,
+ *  "diskFull": false, "visited": 1234, "seconds": 0.002}
+ * </pre>
+ *
+ * where the id is only present if the request had one. Boards are given by
+ * their name in the {@link BoardLibrary}, if there is one, by id, the name
+ * of their file in the board directory without <code>.txt</code>, or, if
+ * paths are allowed, by the path of their file.
+ * Each board is read once and kept in memory with its slide tables and, if
+ * configured, its {@link EndgameDatabase}, shared by all requests and
+ * threads. Puzzles are solved in their canonical form, see
+ * {@link CanonicalBoard}, and the moves turned back to the board as given,
+ * so rotated or mirrored boards share their endgame databases. A* requests
+ * reuse one {@link SolverEngine} per board and thread, so its buffers are
+ * only allocated once.
+ *
+ * @author Markus Schepke
+ */
+class RequestSolver {
+
+    private static final Pattern BOARD_ID = Pattern.compile("\\w[\\w.-]*");
+
+    private final File           boardDirectory;
+    private final BoardLibrary   library;
+    private final File           endgameDirectory;
+    private final SolverOptions  options;
+    private final boolean        paths;
+
+    private final ConcurrentMap<String, Board>           boards;
+    private final ConcurrentMap<String, CanonicalBoard>  canonicals;
+    private final ConcurrentMap<String, EndgameDatabase> endgames;
+    /** the A* engines of the calling thread by board id */
+    private final ThreadLocal<Map<String, SolverEngine>> engines;
+
+    /**
+     * @param boardDirectory
+     *            the directory the boards are read from
+     * @param library
+     *            the library boards are looked up in first, or null
+     * @param endgameDirectory
+     *            the directory of the endgame databases, see
+     *            {@link EndgameDatabase#open(Board, File)}, or null to solve
+     *            without them
+     * @param options
+     *            the settings and upper limits for all requests
+     * @param paths
+     *            whether boards may also be given by the path of their file
+     */
+    RequestSolver(File boardDirectory, BoardLibrary library,
+            File endgameDirectory, SolverOptions options, boolean paths) {
+        this.boardDirectory = boardDirectory;
+        this.library = library;
+        this.endgameDirectory = endgameDirectory;
+        this.options = options;
+        this.paths = paths;
+        this.boards = new ConcurrentHashMap<String, Board>();
+        this.canonicals = new ConcurrentHashMap<String, CanonicalBoard>();
+        this.endgames = new ConcurrentHashMap<String, EndgameDatabase>();
+        this.engines = new ThreadLocal<Map<String, SolverEngine>>() {
+            @Override
+            protected Map<String, SolverEngine> initialValue() {
+                return new HashMap<String, SolverEngine>();
+            }
+        };
+    }
+
+    /**
+     * @return the board with the given id or path, loading it first if
+     *         necessary
+     * @throws IllegalArgumentException
+     *             if there is no such board
+     */
+    Board board(String id) throws IOException {
+        Board board = boards.get(id);
+        if (board != null) {
+            return board;
+        }
+        File file = null;
+        if (library != null && library.contains(id)) {
+            // restored from the library below
+        } else if (id != null && BOARD_ID.matcher(id).matches()) {
+            file = new File(boardDirectory, id + ".txt");
+        } else if (id != null && paths) {
+            file = new File(id);
+        } else {
+            throw new IllegalArgumentException("Illegal board id: " + id);
+        }
+        synchronized (boards) {
+            board = boards.get(id);
+            if (board != null) {
+                return board;
+            }
+            if (file == null) {
+                board = library.board(id);
+            } else if (!file.isFile()) {
+                throw new IllegalArgumentException("Unknown board: " + id);
+            } else {
+                InputStream in = new FileInputStream(file);
+                try {
+                    board = new Board(in);
+                } finally {
+                    in.close();
+                }
+            }
+            CanonicalBoard canonical = new CanonicalBoard(board);
+            if (endgameDirectory != null) {
+                endgames.put(id, EndgameDatabase.open(canonical.getBoard(),
+                        endgameDirectory));
+            }
+            canonicals.put(id, canonical);
+            boards.put(id, board);
+            return board;
+        }
+    }
+
+    /**
+     * @return the ids of the boards loaded so far
+     */
+    List<String> boards() {
+        return new ArrayList<String>(new TreeSet<String>(boards.keySet()));
+    }
+
+    /**
+     * Solves a request in the format described above.
+     *
+     * @return the result, ready to be written as JSON
+     * @throws IllegalArgumentException
+     *             if the request is malformed
+     */
+    Map<String, Object> solve(Map<String, Object> request) throws IOException {
+        String id = string(request, "board");
+        Board board = board(id);
+
+        List<?> robots = list(request.get("robots"), "robots");
+        if (robots.isEmpty()) {
+            throw new IllegalArgumentException("No robots");
+        }
+        Point[] positions = new Point[robots.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = point(robots.get(i), "robots");
+        }
+        Point target = point(request.get("target"), "target");
+        int robot = request.containsKey("robot") ? integer(
+                request.get("robot"), "robot") : 0;
+        Puzzle puzzle = new Puzzle(positions, target, robot);
+        puzzle.check(board);
+
+        SolverOptions solveOptions = options.copy().endgame(endgames.get(id));
+        if (request.containsKey("maxMoves")) {
+            solveOptions.maxMoves(Math.min(options.getMaxMoves(),
+                    integer(request.get("maxMoves"), "maxMoves")));
+        }
+        if (request.containsKey("maxTime")) {
+            solveOptions.maxTime(Math.min(options.getMaxTime(),
+                    number(request.get("maxTime"), "maxTime")));
+        }
+        if (request.containsKey("search")) {
+            String search = string(request, "search");
+            try {
+                solveOptions.searchMode(SolverOptions.SearchMode
+                        .valueOf(search.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Unknown search algorithm: " + search);
+            }
+        }
+
+        CanonicalBoard canonical = canonicals.get(id);
+        Symmetry symmetry = canonical.symmetry(puzzle);
+        Puzzle solved = symmetry.apply(puzzle, board.getWidth(),
+                board.getHeight());
+        SolverEngine engine = null;
+        if (solveOptions.getSearchMode() == SolverOptions.SearchMode.ASTAR) {
+            engine = engines.get().get(id);
+            if (engine == null) {
+                engine = new SolverEngine(canonical.getBoard(), options);
+                engines.get().put(id, engine);
+            }
+        }
+        Solver solver = new Solver(canonical.getBoard(), solved.robots(),
+                solved.getTarget(), robot, solveOptions, engine);
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        if (request.containsKey("id")) {
+            result.put("id", request.get("id"));
+        }
+        result.put("board", id);
+        result.put("solved", solver.solution() != null);
+        result.put("moves", solver.moves());
+        result.put("moveList", moveList(symmetry.inverse().apply(
+                solver.moveCodes())));
+        result.put("timedOut", solver.isTimedOut());
+        result.put("diskFull", solver.isDiskFull());
+        result.put("visited", solver.nodes());
+        result.put("seconds", solver.stats().getSeconds());
+        return result;
+    }
+
+    /**
+     * @return the moves in the form <code>1-Up</code>, with the robots
+     *         numbered from 1 as in {@link Puzzle#robots()}, or null
+     */
+    private static List<String> moveList(byte[] moveCodes) {
+        if (moveCodes == null) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>(moveCodes.length);
+        for (byte code : moveCodes) {
+            result.add((((code & 0xFF) >>> 2) + 1) + "-"
+                    + Board.DIRECTION_NAMES[code & 3]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the JSON object <code>{"error": message}</code>, with the id
+     *         of the request if there is one
+     */
+    static Map<String, Object> error(Map<String, Object> request,
+            String message) {
+        Map<String, Object> error = new LinkedHashMap<String, Object>();
+        if (request != null && request.containsKey("id")) {
+            error.put("id", request.get("id"));
+        }
+        error.put("error", message);
+        return error;
+    }
+
+    private static String string(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Expected a string for "
+                    + key);
+        }
+        return (String) value;
+    }
+
+    private static List<?> list(Object value, String key) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Expected an array for "
+                    + key);
+        }
+        return (List<?>) value;
+    }
+
+    private static int integer(Object value, String key) {
+        if (!(value instanceof Long)
+                || (Long) value != ((Long) value).intValue()) {
+            throw new IllegalArgumentException("Expected an integer for "
+                    + key);
+        }
+        return ((Long) value).intValue();
+    }
+
+    private static double number(Object value, String key) {
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Expected a number for "
+                    + key);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    private static Point point(Object value, String key) {
+        List<?> xy = list(value, key);
+        if (xy.size() != 2) {
+            throw new IllegalArgumentException("Expected [x, y] for " + key);
+        }
+        return new Point(integer(xy.get(0), key), integer(xy.get(1), key));
+    }
+}
@@ -1,14 +1,11 @@
 package info.riemannhypothesis.ricochetrobots;
 
 import java.awt.Color;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Random;
 
 /**
  * @author Markus Schepke
@@ -53,14 +50,22 @@ public class Robot {
 
 	public static Robot[] robotSet(int dimX, int dimY, String[] labels,
 			Color[] colors) {
+		return robotSet(dimX, dimY, labels, colors, new Random());
+	}
+
+	/**
+	 * Places the robots on distinct random cells drawn from the given source,
+	 * so a seeded source always yields the same placement.
+	 */
+	public static Robot[] robotSet(int dimX, int dimY, String[] labels,
+			Color[] colors, Random random) {
 		Robot[] robots = new Robot[labels.length];
 		HashSet<Point> positions = new HashSet<Point>();
 		int counter = 0;
 		for (String label : labels) {
 			Point p;
 			do {
-				p = new Point((int) (Math.random() * dimX),
-						(int) (Math.random() * dimY));
+				p = new Point(random.nextInt(dimX), random.nextInt(dimY));
 			} while (positions.contains(p));
 			positions.add(p);
 			robots[counter] = new Robot(label, colors[counter], p);
@@ -89,47 +94,19 @@ public class Robot {
 		return robotSet(dimX, dimY, labels);
 	}
 
+	/**
+	 * @return the robots defined in a board file, see {@link PuzzleFile}, or
+	 *         null if there are none or one of them is not on the board
+	 */
 	public static Robot[] robotSet(InputStream is) throws IOException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-		String line = br.readLine();
-		String[] dims = line.split("\\s+", 2);
-
-		int width = Integer.parseInt(dims[0], 10);
-		int height = Integer.parseInt(dims[1], 10);
-		HashMap<Character, Point> map = new HashMap<Character, Point>();
-
-		for (int y = 0; y < 2 * height - 1; y++) {
-			line = br.readLine();
-			if (y % 2 == 1)
-				continue;
-			for (int x = 0; x < 2 * width - 1 && x < line.length(); x++)
-				if (x % 2 == 0)
-					map.put(line.charAt(x), new Point(x/2, y/2));
-		}
-
-		List<Robot> robots = new ArrayList<Robot>();
-		
-		while((line = br.readLine()) != null) {
-			String[] info = line.split("\\s+");
-			if (info.length < 3)
-				continue;
-			char symbol = info[0].charAt(0);
-			String label = info[1];
-			int rgb = Integer.parseInt(info[2], 16);
-			Color color = new Color(rgb);
-			Point point = map.get(symbol);
-			if (point == null)
-				return null;
-			Robot robot = new Robot(label, color, point);
-			robots.add(robot);
-		}
-		
-		if (robots.size() == 0)
+		PuzzleFile file = new PuzzleFile(new InputStreamReader(is));
+		try {
+			return file.getRobots();
+		} catch (IllegalArgumentException e) {
 			return null;
-		
-		Robot[] robotArray = new Robot[robots.size()];
-		return robots.toArray(robotArray);
+		} finally {
+			file.close();
+		}
 	}
 
 }
@@ -0,0 +1,43 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * Computes where robots stop when they move, given a packed configuration of
+ * all robots on the board. {@link Board} implements this with its slide
+ * table, {@link BitBoard} with row and column bitmasks.
+ *
+ * @author Markus Schepke
+ */
+public interface SlideEngine {
+
+    /**
+     * Finds the cell a robot starting at the given cell ends up in when moving
+     * in the given direction, stopping at walls and at any of the robots in
+     * the packed state.
+     *
+     * @return the index of the destination cell, which equals the starting
+     *         cell if the robot cannot move in that direction
+     */
+    int dest(int cell, int dir, long state, StateEncoding encoding);
+
+    /**
+     * Collects the cells the given robot can move to in the packed state.
+     *
+     * @param dests
+     *            an array of length at least 4 the destination cells are
+     *            written to
+     * @return the number of destinations written to <code>dests</code>; moves
+     *         which would leave the robot where it is are not counted
+     */
+    default int reachable(int robot, long state, StateEncoding encoding,
+            int[] dests) {
+        int start = encoding.cell(state, robot);
+        int count = 0;
+        for (int dir : Board.DIRECTIONS) {
+            int dest = dest(start, dir, state, encoding);
+            if (dest != start) {
+                dests[count++] = dest;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,417 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the solutions of puzzles, so that a puzzle asked for again is
+ * answered without a search. Puzzles are keyed by the
+ * {@link Board#fingerprint()} of the board, the packed positions of the
+ * robots, the target and the target robot, all in the canonical orientation
+ * of {@link CanonicalBoard}, so a rotated or mirrored puzzle finds the
+ * solution of the original. Each entry holds the moves as
+ * {@link Solver#moveCodes()} and whether they are proven optimal.
+ * <p>
+ * At most a given number of entries are kept in memory, evicting the least
+ * recently used. A cache opened on a file appends every new entry to it and
+ * reads them all back on opening, keeping the latest entry of each puzzle;
+ * the file is rewritten without the evicted and superseded entries once
+ * they make up more than half of it. A record holds the fingerprint and the
+ * packed robots as longs, the target cell as int, the target robot, the
+ * number of robots, whether the moves are optimal and the number of moves
+ * as bytes, followed by the moves. All numbers are big endian.
+ *
+ * @author Markus Schepke
+ */
+public class SolutionCache implements Closeable {
+
+    public static final int                  DEFAULT_CAPACITY = 100000;
+
+    private static final int                 MAGIC            = 0x52525343; // RRSC
+    private static final int                 VERSION          = 1;
+    /** the most moves of a solution which are stored */
+    private static final int                 MAX_MOVES        = 255;
+
+    private final int                        capacity;
+    private final Map<Key, Entry>            entries;
+    /**
+     * the canonical orientation of each board in use; the values do not
+     * refer to their boards, so entries go when the boards do
+     */
+    private final Map<Board, Orientation>    orientations;
+
+    private File                             file;
+    private DataOutputStream                 out;
+
+    private long                             hits;
+    private long                             misses;
+
+    /**
+     * A cache which is only kept in memory.
+     *
+     * @param capacity
+     *            the number of solutions kept
+     */
+    public SolutionCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: "
+                    + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.orientations = Collections
+                .synchronizedMap(new WeakHashMap<Board, Orientation>());
+    }
+
+    /**
+     * Opens a cache backed by the given file, which is created if it does not
+     * exist yet. A record cut short at the end of the file, as left by a
+     * crash, is dropped.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not a solution cache
+     */
+    public static SolutionCache open(File file, int capacity)
+            throws IOException {
+        SolutionCache cache = new SolutionCache(capacity);
+        long records = 0;
+        long valid = 0;
+        if (file.length() > 0) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a solution cache: " + file);
+                }
+                valid = 8;
+                while (true) {
+                    Key key;
+                    Entry entry;
+                    try {
+                        key = new Key(in.readLong(), in.readLong(),
+                                in.readInt(), in.readByte() & 0xFF,
+                                in.readByte() & 0xFF);
+                        boolean optimal = in.readBoolean();
+                        byte[] moveCodes = new byte[in.readByte() & 0xFF];
+                        in.readFully(moveCodes);
+                        entry = new Entry(moveCodes, optimal);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    cache.entries.put(key, entry);
+                    records++;
+                    valid += 8 + 8 + 4 + 3 + 1 + entry.moveCodes.length;
+                }
+            } catch (EOFException e) {
+                throw new IOException("Not a solution cache: " + file);
+            } finally {
+                in.close();
+            }
+        }
+        if (records > 2 * cache.entries.size()) {
+            cache.rewrite(file);
+        } else if (valid < file.length()) {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.WRITE);
+            try {
+                channel.truncate(valid);
+            } finally {
+                channel.close();
+            }
+        }
+        cache.file = file;
+        cache.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true)));
+        if (file.length() == 0) {
+            cache.out.writeInt(MAGIC);
+            cache.out.writeInt(VERSION);
+            cache.out.flush();
+        }
+        return cache;
+    }
+
+    /**
+     * Writes the entries in memory to a new file which then replaces the
+     * given one.
+     */
+    private void rewrite(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream rewritten = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            rewritten.writeInt(MAGIC);
+            rewritten.writeInt(VERSION);
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                write(rewritten, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            rewritten.close();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(DataOutputStream out, Key key, Entry entry)
+            throws IOException {
+        out.writeLong(key.board);
+        out.writeLong(key.robots);
+        out.writeInt(key.target);
+        out.writeByte(key.targetRobot);
+        out.writeByte(key.numberRobots);
+        out.writeBoolean(entry.optimal);
+        out.writeByte(entry.moveCodes.length);
+        out.write(entry.moveCodes);
+    }
+
+    /**
+     * Looks up the solution of a puzzle.
+     *
+     * @param optimal
+     *            whether only a solution proven optimal will do
+     * @param maxMoves
+     *            the most moves the solution may have
+     * @return the moves of the solution as {@link Solver#moveCodes()} on the
+     *         board as given, or null if there is no such entry
+     */
+    public byte[] get(Board board, Point[] positions, Point target,
+            int targetRobot, boolean optimal, int maxMoves) {
+        Orientation orientation = orientation(board);
+        Puzzle puzzle = new Puzzle(positions, target, targetRobot);
+        Symmetry symmetry = orientation.symmetry(puzzle);
+        Key key = orientation.key(symmetry, puzzle);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || (optimal && !entry.optimal)
+                    || entry.moveCodes.length > maxMoves) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return symmetry.inverse().apply(entry.moveCodes);
+    }
+
+    /**
+     * Stores the solution of a puzzle, unless there already is one which is
+     * at least as good, and appends it to the file of the cache if it has
+     * one.
+     *
+     * @param moveCodes
+     *            the moves of the solution as {@link Solver#moveCodes()}
+     * @param optimal
+     *            whether the solution is proven optimal
+     */
+    public void put(Board board, Point[] positions, Point target,
+            int targetRobot, byte[] moveCodes, boolean optimal)
+            throws IOException {
+        if (moveCodes.length > MAX_MOVES || positions.length > 255) {
+            return;
+        }
+        Orientation orientation = orientation(board);
+        Puzzle puzzle = new Puzzle(positions, target, targetRobot);
+        Symmetry symmetry = orientation.symmetry(puzzle);
+        Key key = orientation.key(symmetry, puzzle);
+        Entry entry = new Entry(symmetry.apply(moveCodes), optimal);
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null
+                    && (existing.optimal || !optimal)
+                    && existing.moveCodes.length <= moveCodes.length) {
+                return;
+            }
+            entries.put(key, entry);
+            if (out != null) {
+                write(out, key, entry);
+                out.flush();
+            }
+        }
+    }
+
+    private Orientation orientation(Board board) {
+        Orientation orientation = orientations.get(board);
+        if (orientation == null) {
+            orientation = new Orientation(board);
+            orientations.put(board, orientation);
+        }
+        return orientation;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of solutions in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the file the cache is kept in, or null
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of lookups which found a solution
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which did not
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the share of lookups which found a solution, or 0 if there were
+     *         none
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("solution cache %d entries, %d hits, "
+                + "%d misses, %.1f%% hit rate", entries.size(), hits, misses,
+                100 * getHitRate());
+    }
+
+    private static final class Key {
+        private final long board;
+        private final long robots;
+        private final int  target;
+        private final int  targetRobot;
+        private final int  numberRobots;
+
+        private Key(long board, long robots, int target, int targetRobot,
+                int numberRobots) {
+            this.board = board;
+            this.robots = robots;
+            this.target = target;
+            this.targetRobot = targetRobot;
+            this.numberRobots = numberRobots;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return board == that.board && robots == that.robots
+                    && target == that.target
+                    && targetRobot == that.targetRobot
+                    && numberRobots == that.numberRobots;
+        }
+
+        @Override
+        public int hashCode() {
+            return StateEncoding.hash(board ^ Long.rotateLeft(robots, 17)
+                    ^ ((long) target << 40) ^ ((long) targetRobot << 56)
+                    ^ numberRobots);
+        }
+    }
+
+    /**
+     * What it takes to key puzzles on a board in its canonical orientation:
+     * the fingerprint of the canonical board, the symmetries which lead to it
+     * and the dimensions of the original board.
+     */
+    private static final class Orientation {
+        private final long           fingerprint;
+        private final List<Symmetry> symmetries;
+        private final int            width, height;
+        private final int            cells;
+
+        private Orientation(Board board) {
+            CanonicalBoard canonical = new CanonicalBoard(board);
+            this.fingerprint = canonical.getFingerprint();
+            this.symmetries = canonical.getSymmetries();
+            this.width = board.getWidth();
+            this.height = board.getHeight();
+            this.cells = width * height;
+        }
+
+        private Symmetry symmetry(Puzzle puzzle) {
+            return CanonicalBoard.symmetry(symmetries, puzzle, width, height);
+        }
+
+        /**
+         * @return the key of the puzzle taken to the canonical board by the
+         *         symmetry, with the robots packed as by
+         *         {@link StateEncoding}
+         */
+        private Key key(Symmetry symmetry, Puzzle puzzle) {
+            int numberRobots = puzzle.getNumberRobots();
+            int bits = Math.max(1,
+                    32 - Integer.numberOfLeadingZeros(cells - 1));
+            if (bits * numberRobots > Long.SIZE) {
+                throw new IllegalArgumentException("Cannot pack "
+                        + numberRobots + " robots on a board with " + cells
+                        + " cells");
+            }
+            int w = symmetry.width(width, height);
+            Point[] positions = puzzle.getPositions();
+            long robots = 0;
+            for (int i = 0; i < numberRobots; i++) {
+                Point p = symmetry.apply(positions[i], width, height);
+                robots |= (long) (p.y * w + p.x) << (i * bits);
+            }
+            Point target = symmetry.apply(puzzle.getTarget(), width, height);
+            return new Key(fingerprint, robots, target.y * w + target.x,
+                    puzzle.getTargetRobot(), numberRobots);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[]  moveCodes;
+        private final boolean optimal;
+
+        private Entry(byte[] moveCodes, boolean optimal) {
+            this.moveCodes = moveCodes;
+            this.optimal = optimal;
+        }
+    }
+}
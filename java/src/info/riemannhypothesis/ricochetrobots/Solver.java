@@ -4,16 +4,27 @@
 package info.riemannhypothesis.ricochetrobots;
 
 import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.management.JMException;
 import javax.swing.JFrame;
 
 import org.apache.commons.cli.CommandLine;
@@ -35,11 +46,34 @@ public class Solver {
     public static final int     DEFAULT_FIELD_SIZE = 30;
     private static final long   DEFAULT_WAIT       = 1000;
 
+    private static final int    FOUND              = -1;
+    private static final int    TIMEOUT            = -2;
+    /** the most moves the lookahead of the breadth first search returns */
+    private static final int    MAX_FINISH         = 64;
+
     private final Board         board;
     private final Point         target;
     private final int           targetRobotIndex;
     private final int           numberRobots;
     private final int           moves;
+    private final SlideEngine   engine;
+    private final StateEncoding encoding;
+    private final StateTable    visited;
+    private final boolean       symmetric;
+    private final long          initialState;
+
+    private final SolverStats   stats = new SolverStats();
+    /**
+     * whether the time spent in move generation and the lookahead is
+     * measured, which costs a clock read on every node
+     */
+    private final boolean       timed;
+    private boolean             timedOut;
+    private boolean             diskFull;
+    private final String[]      labels;
+    private final EndgameDatabase endgame;
+    /** the moves of the solution as robot index << 2 | direction */
+    private byte[]              moveCodes;
 
     private final List<Point[]> solution;
 
@@ -55,147 +89,677 @@ public class Solver {
 
     public Solver(Board board, Robot[] robots, Point target, int targetRobot,
             int maxMoves, double maxTime) {
+        this(board, robots, target, targetRobot, new SolverOptions().maxMoves(
+                maxMoves).maxTime(maxTime));
+    }
+
+    public Solver(Board board, Robot[] robots, Point target, int targetRobot,
+            SolverOptions options) {
+        this(board, robots, target, targetRobot, options, null);
+    }
+
+    /**
+     * @param solverEngine
+     *            the engine {@link SolverOptions.SearchMode#ASTAR} searches
+     *            with, which must belong to the same board and is only used
+     *            by one thread at a time, or null for a new one; reusing an
+     *            engine saves allocating its buffers for every solve
+     */
+    public Solver(Board board, Robot[] robots, Point target, int targetRobot,
+            SolverOptions options, SolverEngine solverEngine) {
+        if (solverEngine != null && solverEngine.getBoard() != board) {
+            throw new IllegalArgumentException(
+                    "Solver engine belongs to a different board");
+        }
         this.board = board;
         this.target = target;
 
         this.numberRobots = robots.length;
-        Point[] initial = new Point[numberRobots];
-        int counter = 0;
-        for (Robot robot : robots) {
-            initial[counter] = robot.getPosition();
-            counter++;
+        this.labels = new String[numberRobots];
+        for (int i = 0; i < numberRobots; i++) {
+            labels[i] = robots[i].getLabel();
         }
         this.targetRobotIndex = targetRobot;
-
-        this.solution = solveBruteForce(initial, maxMoves, maxTime);
+        this.engine = options.getEngine().create(board);
+        this.encoding = new StateEncoding(board, numberRobots);
+
+        this.visited = new StateTable(options.getTableCapacity(),
+                options.getLoadFactor());
+
+        this.symmetric = options.isSymmetry();
+        this.timed = options.getMetrics() != null
+                || new SolverEvents.Depth().isEnabled();
+        this.endgame = options.getEndgame() != null
+                && options.getEndgame().covers(board.cell(target)) ? options
+                .getEndgame() : null;
+        if (endgame != null && endgame.getFingerprint() != board.fingerprint()) {
+            throw new IllegalArgumentException(
+                    "Endgame database belongs to a different board");
+        }
+        this.initialState = encoding.encode(robots);
+        long start = symmetric ? encoding.canonical(initialState,
+                targetRobot) : initialState;
+        SolverEvents.Solve event = new SolverEvents.Solve();
+        event.begin();
+        long startNanos = System.nanoTime();
+        long startBytes = SolverStats.allocatedBytes();
+        SolutionCache cache = options.getSolutionCache();
+        boolean optimal = options.getSearchMode() != SolverOptions
+                .SearchMode.BFS;
+        List<Point[]> cached = null;
+        if (cache != null) {
+            cached = replay(cache.get(board, encoding.decode(initialState),
+                    target, targetRobot, optimal, options.getMaxMoves()));
+            stats.measured(SolverStats.Counter.SOLUTION_CACHE);
+            if (cached != null) {
+                stats.solutionCacheHit();
+            } else {
+                stats.solutionCacheMiss();
+            }
+        }
+        if (cached != null) {
+            this.solution = cached;
+        } else {
+            switch (options.getSearchMode()) {
+            case ASTAR:
+                if (solverEngine == null) {
+                    solverEngine = new SolverEngine(board, options);
+                }
+                solverEngine.solve(robots, target, targetRobot,
+                        options.getMaxMoves(), options.getMaxTime());
+                this.solution = solverEngine.solution();
+                stats.measured(SolverStats.NODES);
+                stats.measured(SolverStats.Counter.PEAK_FRONTIER);
+                stats.generated(solverEngine.generated());
+                stats.expanded(solverEngine.expanded());
+                stats.duplicates(solverEngine.duplicates());
+                stats.visited(solverEngine.nodes());
+                stats.frontier(solverEngine.peakOpen());
+                assert solution == null || legalSolution(solution);
+                break;
+            case IDASTAR:
+                stats.measured(SolverStats.NODES);
+                stats.measured(SolverStats.Counter.DEPTHS);
+                if (timed) {
+                    stats.measured(SolverStats.Counter.MOVE_GENERATION);
+                }
+                this.solution = solveIdaStar(start, options.getMaxMoves(),
+                        options.getMaxTime(), new StateMap(
+                                options.getTableCapacity(),
+                                options.getLoadFactor()));
+                break;
+            case PARALLEL:
+                ParallelSearch search = new ParallelSearch(engine, encoding,
+                        targetRobot, board.cell(target), symmetric, options,
+                        stats);
+                long[] path = search.solve(start, options.getMaxMoves(),
+                        options.getMaxTime());
+                this.solution = path == null ? null : solution(path, path.length);
+                stats.measured(SolverStats.NODES);
+                stats.measured(SolverStats.Counter.PEAK_FRONTIER,
+                        SolverStats.Counter.DEPTHS);
+                stats.visited(search.visited());
+                break;
+            case EXTERNAL:
+                ExternalSearch external = new ExternalSearch(engine, encoding,
+                        targetRobot, board.cell(target), symmetric, options, stats);
+                long[] externalPath = external.solve(start, options.getMaxMoves(),
+                        options.getMaxTime());
+                this.solution = externalPath == null ? null : solution(
+                        externalPath, externalPath.length);
+                this.timedOut = external.isTimedOut();
+                this.diskFull = external.isDiskFull();
+                stats.measured(SolverStats.NODES);
+                stats.measured(SolverStats.Counter.PEAK_FRONTIER,
+                        SolverStats.Counter.DEPTHS);
+                break;
+            default:
+                stats.measured(SolverStats.NODES);
+                stats.measured(SolverStats.Counter.PEAK_FRONTIER,
+                        SolverStats.Counter.DEPTHS);
+                if (timed) {
+                    stats.measured(SolverStats.Counter.MOVE_GENERATION,
+                            SolverStats.Counter.LOOKAHEAD);
+                }
+                if (endgame == null) {
+                    stats.measured(SolverStats.Counter.END_MOVE_CACHE);
+                }
+                this.solution = solveBruteForce(start, options.getMaxMoves(),
+                        options.getMaxTime(), options.getTableCapacity(),
+                        options.getEndMoveCache());
+                stats.visited(visited.size());
+            }
+        }
         this.moves = this.solution == null ? -1 : this.solution.size() - 1;
+        if (solution != null && moveCodes == null) {
+            moveCodes = moveCodes(solution);
+        }
+        if (cache != null && cached == null && solution != null) {
+            try {
+                cache.put(board, encoding.decode(initialState), target,
+                        targetRobot, moveCodes, optimal);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long endBytes = SolverStats.allocatedBytes();
+        stats.finish(System.nanoTime() - startNanos,
+                startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes);
+        if (solution == null && !timedOut && !diskFull) {
+            // searches which do not report it themselves
+            timedOut = stats.getSeconds() >= options.getMaxTime();
+        }
+        if (options.getMetrics() != null) {
+            options.getMetrics().record(stats, solution != null, timedOut);
+        }
+
+        if (event.shouldCommit()) {
+            event.board = SolverEvents.board(board);
+            event.width = board.getWidth();
+            event.height = board.getHeight();
+            event.targetX = target.x;
+            event.targetY = target.y;
+            event.robot = targetRobot;
+            event.search = options.getSearchMode().name();
+            event.result = solution != null ? "solved"
+                    : timedOut ? "timeout" : diskFull ? "disk limit"
+                            : "unsolved";
+            event.moves = moves;
+            event.visited = stats.getVisited();
+            event.expanded = stats.getExpanded();
+            event.allocated = stats.getAllocatedBytes();
+            event.commit();
+        }
+        if (timedOut) {
+            SolverEvents.Timeout timeout = new SolverEvents.Timeout();
+            if (timeout.shouldCommit()) {
+                timeout.board = SolverEvents.board(board);
+                timeout.search = options.getSearchMode().name();
+                timeout.maxTime = (long) (options.getMaxTime() * 1e9);
+                timeout.depth = stats.getDepthCounts().length - 1;
+                timeout.visited = stats.getVisited();
+                timeout.commit();
+            }
+        }
     }
 
     /**
-     * Finds a solution by trying out all possible moves.
+     * Finds a solution by trying out all possible moves. The searched
+     * configurations are kept in primitive arrays in the order they are
+     * generated, which is also the order they are expanded in, each with the
+     * index of its parent and the move leading to it; only the configurations
+     * along the solution are rebuilt in the end.
      * 
      * @param initial
-     *            the initial configuration of the robots
+     *            the initial configuration of the robots, packed according to
+     *            {@link #encoding}
      * @param maxMoves
      *            the maximal number of moves to be searched
      * @return a List of configurations representing the moves of the solution
      *         found, or null if none could be found withing {@link maxMoves}.
      */
-    private List<Point[]> solveBruteForce(Point[] initial, int maxMoves,
-            double maxTime) {
+    private List<Point[]> solveBruteForce(long initial, int maxMoves,
+            double maxTime, int capacity, int cacheCapacity) {
 
         long start = System.nanoTime();
         long end = (long) (start + maxTime * 1e9);
 
-        Queue<Node> queue = new LinkedList<Node>();
-        queue.add(new Node(initial, 0, null));
-
-        Node current;
-        boolean solved = false;
-
-        while ((current = queue.poll()) != null) {
-
-            if (current.configuration[targetRobotIndex].equals(target)) {
-                solved = true;
-                break;
+        int targetCell = board.cell(target);
+        int[] dests = new int[Board.DIRECTIONS.length];
+        int[] finish = new int[MAX_FINISH];
+        EndMoveCache cache = endgame != null ? null : new EndMoveCache(board,
+                encoding, targetCell, targetRobotIndex, cacheCapacity, stats);
+
+        long[] states = new long[Math.max(capacity, 1)];
+        int[] parents = new int[states.length];
+        byte[] codes = new byte[states.length];
+        int size = 0;
+        states[size] = initial;
+        parents[size] = -1;
+        size++;
+        visited.add(initial);
+        stats.depth(0);
+
+        int current;
+        int found = -1;
+        int depth = 0;
+        int levelEnd = size;
+        SolverEvents.Depth depthEvent = beginDepth();
+
+        for (current = 0; current < size; current++) {
+
+            stats.frontier(size - current);
+
+            if (current == levelEnd) {
+                commitDepth(depthEvent, depth, size - current);
+                depth++;
+                levelEnd = size;
+                depthEvent = beginDepth();
             }
 
-            Point[] configWithoutTarget = new Point[numberRobots - 1];
-            for (int i = 0, c = 0; i < numberRobots; i++) {
-                if (i == targetRobotIndex) {
-                    continue;
-                }
-                configWithoutTarget[c++] = current.configuration[i];
+            long state = states[current];
+            if (encoding.cell(state, targetRobotIndex) == targetCell) {
+                found = current;
+                break;
             }
 
-            HashMap<Point, MoveNode> endMoves = endMoves(configWithoutTarget);
-            MoveNode moveNode = null;
-            int moves = -1;
-
-            for (Point dest : board.reachable(
-                    current.configuration[targetRobotIndex],
-                    current.configuration)) {
-                final MoveNode temp = endMoves.get(dest);
-                if (temp != null && (moveNode == null || temp.moves < moves)) {
-                    moveNode = temp;
-                    moves = temp.moves;
-                }
+            long lookaheadStart = timed ? System.nanoTime() : 0;
+            int finishLength = endgame != null ? endgame.finish(targetCell,
+                    targetRobotIndex, state, encoding, engine, finish)
+                    : lookahead(state, cache, dests, finish);
+            if (timed) {
+                stats.lookahead(System.nanoTime() - lookaheadStart);
             }
 
-            if (moveNode != null) {
-                while (moveNode != null) {
-                    Point[] newConfig = Arrays.copyOf(current.configuration,
-                            numberRobots);
-                    newConfig[targetRobotIndex] = moveNode.point;
-                    current = new Node(newConfig, current.moves + 1, current);
-                    queue.add(current);
-                    moveNode = moveNode.next;
+            if (finishLength > 0) {
+                found = current;
+                for (int g = 0; g < finishLength; g++) {
+                    int from = encoding.cell(states[found], targetRobotIndex);
+                    int to = finish[g];
+                    if (size == states.length) {
+                        states = Arrays.copyOf(states, 2 * size);
+                        parents = Arrays.copyOf(parents, 2 * size);
+                        codes = Arrays.copyOf(codes, 2 * size);
+                    }
+                    states[size] = encoding.move(states[found],
+                            targetRobotIndex, to);
+                    parents[size] = found;
+                    codes[size] = moveCode(targetRobotIndex,
+                            board.direction(from, to));
+                    found = size++;
                 }
-                solved = true;
                 break;
             }
 
-            if (System.nanoTime() >= end) {
+            if ((current & 0x3FF) == 0 && System.nanoTime() >= end) {
+                timedOut = true;
                 break;
             }
 
-            if (current.moves >= maxMoves) {
+            if (depth >= maxMoves) {
                 continue;
             }
 
+            long generationStart = timed ? System.nanoTime() : 0;
+            stats.expanded();
             for (int i = 0; i < numberRobots; i++) {
-                Point position = current.configuration[i];
-                for (Point dest : board.reachable(position,
-                        current.configuration)) {
-                    if (!dest.equals(position)) {
-                        Point[] newConfig = Arrays.copyOf(
-                                current.configuration, numberRobots);
-                        newConfig[i] = dest;
-                        if (current.previous == null
-                                || !Arrays.equals(newConfig,
-                                        current.previous.configuration)) {
-                            queue.add(new Node(newConfig, current.moves + 1,
-                                    current));
-                        }
+                int cell = encoding.cell(state, i);
+                for (int dir : Board.DIRECTIONS) {
+                    int dest = engine.dest(cell, dir, state, encoding);
+                    if (dest == cell) {
+                        continue;
+                    }
+                    long newState = child(state, i, dest);
+                    stats.generated();
+                    if (!visited.add(newState)) {
+                        stats.duplicate();
+                        continue;
                     }
+                    if (size == states.length) {
+                        states = Arrays.copyOf(states, 2 * size);
+                        parents = Arrays.copyOf(parents, 2 * size);
+                        codes = Arrays.copyOf(codes, 2 * size);
+                    }
+                    states[size] = newState;
+                    parents[size] = current;
+                    codes[size] = moveCode(i, dir);
+                    size++;
+                    stats.depth(depth + 1);
                 }
             }
+            if (timed) {
+                stats.moveGeneration(System.nanoTime() - generationStart);
+            }
         }
 
-        if (!solved) {
+        commitDepth(depthEvent, depth, size - current);
+
+        if (found < 0) {
             return null;
         }
 
-        assert current.configuration[targetRobotIndex].equals(target);
+        assert encoding.cell(states[found], targetRobotIndex) == targetCell;
+
+        return path(states, parents, codes, found);
+    }
+
+    /**
+     * Looks for a way for the target robot to reach the target on its own
+     * with one move followed by the moves found by {@link #endMoves}, which
+     * are taken from the cache.
+     *
+     * @param finish
+     *            an array the cells the target robot stops on are written to
+     * @return the number of moves written to <code>finish</code>, or 0 if
+     *         there is no such way
+     */
+    private int lookahead(long state, EndMoveCache cache, int[] dests,
+            int[] finish) {
+        int[] endMoves = cache.get(state);
+        int cells = endMoves.length / 2;
+        int cell = -1;
+        int moves = -1;
+
+        int count = engine.reachable(targetRobotIndex, state, encoding, dests);
+        for (int d = 0; d < count; d++) {
+            int temp = endMoves[dests[d]];
+            if (temp >= 0 && (cell < 0 || temp < moves)) {
+                cell = dests[d];
+                moves = temp;
+            }
+        }
+
+        int length = 0;
+        for (; cell >= 0; cell = endMoves[cells + cell]) {
+            if (length == finish.length) {
+                return 0;
+            }
+            finish[length++] = cell;
+        }
+        return length;
+    }
+
+    /**
+     * Starts the flight recorder event of a depth of the breadth first
+     * search, keeping the current counters in it until it is committed.
+     */
+    private SolverEvents.Depth beginDepth() {
+        SolverEvents.Depth event = new SolverEvents.Depth();
+        if (event.isEnabled()) {
+            event.expanded = stats.getExpanded();
+            event.generated = stats.getGenerated();
+            event.duplicates = stats.getDuplicates();
+            event.lookahead = stats.getLookaheadNanos();
+            event.begin();
+        }
+        return event;
+    }
 
-        LinkedList<Point[]> result = new LinkedList<Point[]>();
-        while (current != null) {
-            assert current.previous == null
-                    || legalMove(current.previous.configuration,
-                            current.configuration);
-            result.addFirst(current.configuration);
-            current = current.previous;
+    private void commitDepth(SolverEvents.Depth event, int depth,
+            int frontier) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.board = SolverEvents.board(board);
+            event.depth = depth;
+            event.expanded = stats.getExpanded() - event.expanded;
+            event.generated = stats.getGenerated() - event.generated;
+            event.duplicates = stats.getDuplicates() - event.duplicates;
+            event.lookahead = stats.getLookaheadNanos() - event.lookahead;
+            event.frontier = frontier;
+            event.commit();
+        }
+    }
+
+    /**
+     * Finds an optimal solution with iterative deepening A*: depth first
+     * searches which cut off any configuration whose estimated total number
+     * of moves exceeds a bound, starting with the estimate for the initial
+     * configuration and raising the bound to the smallest estimate cut off in
+     * the previous iteration. Configurations already reached with as few
+     * moves in the current iteration are not searched again.
+     * 
+     * @param initial
+     *            the initial configuration of the robots, packed according to
+     *            {@link #encoding}
+     * @param maxMoves
+     *            the maximal number of moves to be searched
+     * @param seen
+     *            the table to store the fewest moves per configuration in
+     * @return a List of configurations representing the moves of the solution
+     *         found, or null if none could be found withing {@link maxMoves}.
+     */
+    private List<Point[]> solveIdaStar(long initial, int maxMoves,
+            double maxTime, StateMap seen) {
+
+        long start = System.nanoTime();
+        long end = (long) (start + maxTime * 1e9);
+
+        int targetCell = board.cell(target);
+        int[] bounds = board.lowerBounds(targetCell);
+        int[][] dests = new int[maxMoves + 1][Board.DIRECTIONS.length];
+        long[] path = new long[maxMoves + 1];
+        path[0] = initial;
+
+        int bound = bounds[encoding.cell(initial, targetRobotIndex)];
+        while (bound <= maxMoves) {
+            seen.clear();
+            int result = deepen(path, 0, bound, targetCell, bounds, dests,
+                    seen, end);
+            stats.visited(stats.getVisited() + seen.size());
+            if (result == FOUND) {
+                // the first solution is always found at the bound itself
+                return solution(path, bound + 1);
+            }
+            if (result == TIMEOUT) {
+                timedOut = true;
+                break;
+            }
+            bound = result;
+        }
+
+        return null;
+    }
+
+    /**
+     * Depth first search step of {@link #solveIdaStar}.
+     * 
+     * @return {@link #FOUND} if a solution was found, in which case it is
+     *         stored in <code>path</code>, {@link #TIMEOUT} if time ran out,
+     *         and otherwise the smallest estimate which exceeded the bound
+     */
+    private int deepen(long[] path, int g, int bound, int targetCell,
+            int[] bounds, int[][] dests, StateMap seen, long end) {
+        long state = path[g];
+        int robotCell = encoding.cell(state, targetRobotIndex);
+        int h = bounds[robotCell];
+        if (h > bound - g) {
+            return h == Integer.MAX_VALUE ? h : g + h;
+        }
+        if (robotCell == targetCell) {
+            return FOUND;
+        }
+        if (seen.get(state, Integer.MAX_VALUE) <= g) {
+            stats.duplicate();
+            return Integer.MAX_VALUE;
+        }
+        if ((stats.getExpanded() & 0x3FF) == 0 && System.nanoTime() >= end) {
+            return TIMEOUT;
+        }
+        seen.put(state, g);
+        stats.expanded();
+        stats.depth(g);
+
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < numberRobots; i++) {
+            long generationStart = timed ? System.nanoTime() : 0;
+            int count = engine.reachable(i, state, encoding, dests[g]);
+            if (timed) {
+                stats.moveGeneration(System.nanoTime() - generationStart);
+            }
+            for (int d = 0; d < count; d++) {
+                long newState = child(state, i, dests[g][d]);
+                if (g > 0 && newState == path[g - 1]) {
+                    continue;
+                }
+                stats.generated();
+                path[g + 1] = newState;
+                int result = deepen(path, g + 1, bound, targetCell, bounds,
+                        dests, seen, end);
+                if (result == FOUND || result == TIMEOUT) {
+                    return result;
+                }
+                min = Math.min(min, result);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return the state after moving the given robot to the given cell, in
+     *         canonical form if interchangeable robots are identified
+     */
+    private long child(long state, int robot, int cell) {
+        long result = encoding.move(state, robot, cell);
+        return symmetric ? encoding.canonical(result, targetRobotIndex)
+                : result;
+    }
+
+    /**
+     * Rebuilds the solution ending in the searched configuration with the
+     * given index by replaying the stored moves from the initial
+     * configuration. The robot of a move code is the one at the moving
+     * robot's cell, which differs from the code's index if the stored
+     * configurations are canonical.
+     */
+    private List<Point[]> path(long[] states, int[] parents, byte[] codes,
+            int index) {
+        int length = 0;
+        for (int i = index; parents[i] >= 0; i = parents[i]) {
+            length++;
+        }
+        int[] indices = new int[length];
+        for (int i = index, g = length - 1; g >= 0; i = parents[i], g--) {
+            indices[g] = i;
+        }
+
+        List<Point[]> result = new ArrayList<Point[]>(length + 1);
+        moveCodes = new byte[length];
+        long actual = initialState;
+        result.add(encoding.decode(actual));
+        for (int g = 0; g < length; g++) {
+            int i = indices[g];
+            int dir = codes[i] & 3;
+            int cell = encoding.cell(states[parents[i]], (codes[i] & 0xFF) >>> 2);
+            int robot = robotAt(actual, cell);
+            int dest = engine.dest(cell, dir, actual, encoding);
+            actual = encoding.move(actual, robot, dest);
+            assert (symmetric ? encoding.canonical(actual, targetRobotIndex)
+                    : actual) == states[i];
+            moveCodes[g] = moveCode(robot, dir);
+            result.add(encoding.decode(actual));
         }
         return result;
     }
 
-    private boolean legalMove(Point[] prev, Point[] next) {
-        if (prev.length != next.length) {
-            System.out.println("Lengths don't match!");
-            return false;
+    /**
+     * Replays moves taken from the {@link SolutionCache} from the initial
+     * configuration and keeps them as the move codes of the solution.
+     *
+     * @return the configurations along the moves, or null if there are no
+     *         moves or they do not bring the target robot to the target
+     */
+    private List<Point[]> replay(byte[] codes) {
+        if (codes == null) {
+            return null;
         }
+        List<Point[]> result = new ArrayList<Point[]>(codes.length + 1);
+        long actual = initialState;
+        result.add(encoding.decode(actual));
+        for (byte code : codes) {
+            int robot = (code & 0xFF) >>> 2;
+            if (robot >= numberRobots) {
+                return null;
+            }
+            int cell = encoding.cell(actual, robot);
+            int dest = engine.dest(cell, code & 3, actual, encoding);
+            if (dest == cell) {
+                return null;
+            }
+            actual = encoding.move(actual, robot, dest);
+            result.add(encoding.decode(actual));
+        }
+        if (encoding.cell(actual, targetRobotIndex) != board.cell(target)) {
+            return null;
+        }
+        moveCodes = codes;
+        return result;
+    }
+
+    /**
+     * @return the index of the robot at the given cell in the state, or -1
+     */
+    private int robotAt(long state, int cell) {
+        for (int i = 0; i < numberRobots; i++) {
+            if (encoding.cell(state, i) == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte moveCode(int robot, int dir) {
+        return (byte) (robot << 2 | dir);
+    }
+
+    /**
+     * Derives the move codes from the configurations along a solution.
+     */
+    private byte[] moveCodes(List<Point[]> solution) {
+        byte[] result = new byte[solution.size() - 1];
+        for (int g = 1; g < solution.size(); g++) {
+            Point[] previous = solution.get(g - 1);
+            Point[] next = solution.get(g);
+            for (int i = 0; i < numberRobots; i++) {
+                if (!previous[i].equals(next[i])) {
+                    result[g - 1] = moveCode(i, board.direction(
+                            board.cell(previous[i]), board.cell(next[i])));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Turns a sequence of searched states into the solution, mapping
+     * canonical states back to the actual robots.
+     */
+    private List<Point[]> solution(long[] states, int length) {
+        List<Point[]> result = new ArrayList<Point[]>(length);
+        long actual = initialState;
+        for (int g = 0; g < length; g++) {
+            if (g > 0) {
+                long previous = actual;
+                actual = symmetric ? encoding.follow(actual, states[g - 1],
+                        states[g]) : states[g];
+                assert legalMove(previous, actual);
+            }
+            result.add(encoding.decode(actual));
+        }
+        return result;
+    }
+
+    private boolean legalSolution(List<Point[]> solution) {
+        for (int i = 1; i < solution.size(); i++) {
+            if (!legalMove(encoding.encode(solution.get(i - 1)),
+                    encoding.encode(solution.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean legalMove(long prev, long next) {
         int countDiff = 0;
-        for (int i = 0; i < prev.length; i++) {
-            if (prev[i].equals(next[i])) {
+        int[] dests = new int[Board.DIRECTIONS.length];
+        for (int i = 0; i < numberRobots; i++) {
+            int from = encoding.cell(prev, i);
+            int to = encoding.cell(next, i);
+            if (from == to) {
                 continue;
             }
             if (++countDiff > 1) {
                 System.out.println("More than one position differs!");
                 return false;
             }
-            if (!board.reachable(prev[i], prev).contains(next[i])) {
-                System.out.println("Point " + next[i] + " not reachable from "
-                        + prev[i] + "!");
+            boolean reachable = false;
+            int count = board.reachable(i, prev, encoding, dests);
+            for (int d = 0; d < count; d++) {
+                reachable |= dests[d] == to;
+            }
+            if (!reachable) {
+                System.out.println("Point " + board.point(to)
+                        + " not reachable from " + board.point(from) + "!");
                 return false;
             }
         }
@@ -206,7 +770,7 @@ public class Solver {
         return true;
     }
 
-    private HashMap<Point, MoveNode> endMoves(Point[] configuration) {
+    HashMap<Point, MoveNode> endMoves(Point[] configuration) {
         HashMap<Point, MoveNode> endMoves = new HashMap<Point, MoveNode>();
         for (Point point : configuration) {
             if (point.equals(target)) {
@@ -216,7 +780,11 @@ public class Solver {
         MoveNode node = new MoveNode(target, 0, null);
         endMoves.put(target, node);
         for (int dir : Board.DIRECTIONS) {
-            if (board.isConnected(target, dir, configuration)) {
+            // the robot coming from that side only stops on the target if
+            // it cannot slide on
+            if (board.isConnected(target, dir, configuration)
+                    && !board.isConnected(target, Board.OPPOSITE[dir],
+                            configuration)) {
                 addToMap(endMoves, configuration, target.move(dir), 1, dir,
                         node);
             }
@@ -255,16 +823,57 @@ public class Solver {
         return solution;
     }
 
-    private class Node {
-        private final Point[] configuration;
-        private final int     moves;
-        private final Node    previous;
+    /**
+     * @return the moves of the solution, each encoded as
+     *         <code>robot &lt;&lt; 2 | direction</code>, or null if none was
+     *         found
+     */
+    public byte[] moveCodes() {
+        return moveCodes == null ? null : moveCodes.clone();
+    }
 
-        private Node(Point[] configuration, int moves, Node previous) {
-            this.configuration = configuration;
-            this.moves = moves;
-            this.previous = previous;
+    /**
+     * @return the moves of the solution in the form <code>Red-Up</code>, or
+     *         null if none was found
+     */
+    public List<String> moveList() {
+        if (moveCodes == null) {
+            return null;
         }
+        List<String> result = new ArrayList<String>(moveCodes.length);
+        for (byte code : moveCodes) {
+            result.add(labels[(code & 0xFF) >>> 2] + "-"
+                    + Board.DIRECTION_NAMES[code & 3]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of configurations visited by the search, summed over
+     *         all iterations of an iterative deepening search
+     */
+    public long nodes() {
+        return stats.getVisited();
+    }
+
+    /**
+     * @return true if the search was stopped by the time limit
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return true if the external search was stopped because its scratch
+     *         files reached the disk limit, see
+     *         {@link SolverOptions#diskLimit(long)}
+     */
+    public boolean isDiskFull() {
+        return diskFull;
+    }
+
+    public SolverStats stats() {
+        return stats;
     }
 
     protected class MoveNode implements Comparable<MoveNode> {
@@ -296,12 +905,36 @@ public class Solver {
 
 		Options options = new Options();
 
-		options.addOption(Option.builder("b").longOpt("board").required(true)
-				.hasArg().desc("board file path").build());
+		options.addOption(Option.builder("b").longOpt("board").hasArgs()
+				.desc("board file path, several for --bench").build());
 		options.addOption(Option.builder("m").longOpt("max-moves").hasArg()
 				.type(Integer.class).desc("maximal number of moves").build());
 		options.addOption(Option.builder("t").longOpt("max-time").hasArg()
 				.type(Double.class).desc("maximal time").build());
+		options.addOption(Option.builder().longOpt("threads").hasArg()
+				.type(Integer.class)
+				.desc("number of threads for parallel search, --serve "
+						+ "and --batch")
+				.build());
+		options.addOption(Option.builder().longOpt("chunk-size").hasArg()
+				.type(Integer.class)
+				.desc("states per task for parallel search").build());
+		options.addOption(Option.builder().longOpt("table-capacity").hasArg()
+				.type(Integer.class)
+				.desc("initial capacity of the transposition table").build());
+		options.addOption(Option.builder().longOpt("load-factor").hasArg()
+				.type(Float.class)
+				.desc("load factor of the transposition table").build());
+		options.addOption(Option.builder("s").longOpt("search").hasArg()
+				.desc("search algorithm: bfs (default), astar, idastar, "
+						+ "parallel or external")
+				.build());
+		options.addOption(Option.builder().longOpt("no-symmetry")
+				.desc("do not treat the other robots as interchangeable")
+				.build());
+		options.addOption(Option.builder("e").longOpt("engine").hasArg()
+				.desc("move generation engine: table (default) or bitboard")
+				.build());
 		options.addOption(Option.builder("g").longOpt("graphical")
 				.desc("graphical representation").build());
 		options.addOption(Option.builder("w").longOpt("width").hasArg()
@@ -312,6 +945,61 @@ public class Solver {
 				.type(Long.class).desc("wait to repaint").build());
 		options.addOption(Option.builder("i").longOpt("image").hasArg()
 				.desc("image dir path").build());
+		options.addOption(Option.builder().longOpt("scratch-dir").hasArg()
+				.desc("directory for the files of external search").build());
+		options.addOption(Option.builder().longOpt("partitions").hasArg()
+				.type(Integer.class)
+				.desc("files per depth of external search").build());
+		options.addOption(Option.builder().longOpt("memory-limit").hasArg()
+				.type(Long.class)
+				.desc("megabytes of buffers for external search").build());
+		options.addOption(Option.builder().longOpt("disk-limit").hasArg()
+				.type(Long.class)
+				.desc("megabytes of files for external search").build());
+		options.addOption(Option.builder().longOpt("endgame").hasArg()
+				.desc("directory of endgame databases for the lookahead")
+				.build());
+		options.addOption(Option.builder().longOpt("end-move-cache").hasArg()
+				.type(Integer.class)
+				.desc("configurations the lookahead caches end moves for")
+				.build());
+		options.addOption(Option.builder().longOpt("solution-cache").hasArg()
+				.desc("file to keep the solutions of puzzles in").build());
+		options.addOption(Option.builder().longOpt("solution-cache-size")
+				.hasArg().type(Integer.class)
+				.desc("solutions the solution cache keeps in memory")
+				.build());
+		options.addOption(Option.builder().longOpt("stats")
+				.desc("print search statistics").build());
+		options.addOption(Option.builder().longOpt("jmx")
+				.desc("publish search statistics via JMX").build());
+		options.addOption(Option.builder().longOpt("bench")
+				.desc("solve a seeded corpus of puzzles and report timings")
+				.build());
+		options.addOption(Option.builder().longOpt("corpus-size").hasArg()
+				.type(Integer.class).desc("puzzles per board for --bench")
+				.build());
+		options.addOption(Option.builder().longOpt("seed").hasArg()
+				.type(Long.class).desc("seed of the corpus for --bench")
+				.build());
+		options.addOption(Option.builder().longOpt("corpus-out").hasArg()
+				.desc("write the corpus of --bench to this file").build());
+		options.addOption(Option.builder().longOpt("corpus-in").hasArg()
+				.desc("replay the corpus in this file with --bench").build());
+		options.addOption(Option.builder().longOpt("serve").hasArg()
+				.type(Integer.class)
+				.desc("answer solve requests over HTTP on this port").build());
+		options.addOption(Option.builder().longOpt("batch").hasArg()
+				.optionalArg(true)
+				.desc("solve the JSON lines in this file (or standard input) "
+						+ "and write the results as JSON lines")
+				.build());
+		options.addOption(Option.builder().longOpt("library").hasArg()
+				.desc("board library file; -b, --serve and --batch then "
+						+ "name boards in it").build());
+		options.addOption(Option.builder().longOpt("board-dir").hasArg()
+				.desc("directory of the boards for --serve and --batch "
+						+ "(default boards)").build());
 
 		CommandLineParser parser = new DefaultParser();
 		HelpFormatter formatter = new HelpFormatter();
@@ -326,12 +1014,52 @@ public class Solver {
 			return;
 		}
 
+		if (!cmd.hasOption("board") && !cmd.hasOption("serve")
+				&& !cmd.hasOption("batch")
+				&& !(cmd.hasOption("bench") && cmd.hasOption("corpus-in"))) {
+			System.out.println("Missing required option: b");
+			formatter.printHelp("Solver", options);
+			System.exit(1);
+			return;
+		}
+
 		String boardFile = cmd.getOptionValue("board");
 		int maxMoves = Integer.parseInt(
 				cmd.getOptionValue("max-moves",
 						Integer.toString(DEFAULT_MAX_MOVES, 10)), 10);
 		double maxTime = Double.parseDouble(cmd.getOptionValue("max-time",
 				Double.toString(DEFAULT_MAX_TIME)));
+		int threads = Integer.parseInt(cmd.getOptionValue("threads",
+				Integer.toString(SolverOptions.DEFAULT_THREADS, 10)), 10);
+		int chunkSize = Integer.parseInt(cmd.getOptionValue("chunk-size",
+				Integer.toString(SolverOptions.DEFAULT_CHUNK_SIZE, 10)), 10);
+		int tableCapacity = Integer.parseInt(cmd.getOptionValue(
+				"table-capacity",
+				Integer.toString(StateTable.DEFAULT_CAPACITY, 10)), 10);
+		float loadFactor = Float.parseFloat(cmd.getOptionValue("load-factor",
+				Float.toString(StateTable.DEFAULT_LOAD_FACTOR)));
+		SolverOptions.Engine engine;
+		try {
+			engine = SolverOptions.Engine.valueOf(cmd.getOptionValue(
+					"engine", "table").toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown engine: "
+					+ cmd.getOptionValue("engine"));
+			formatter.printHelp("Solver", options);
+			System.exit(1);
+			return;
+		}
+		SolverOptions.SearchMode searchMode;
+		try {
+			searchMode = SolverOptions.SearchMode.valueOf(cmd.getOptionValue(
+					"search", "bfs").toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown search algorithm: "
+					+ cmd.getOptionValue("search"));
+			formatter.printHelp("Solver", options);
+			System.exit(1);
+			return;
+		}
 		boolean graphical = cmd.hasOption("graphical");
 		int fieldWidth = Integer.parseInt(
 				cmd.getOptionValue("width",
@@ -345,25 +1073,124 @@ public class Solver {
 		String imageDir = cmd.getOptionValue("image", null);
 		boolean saveImage = imageDir != null;
 
+		SolverOptions solverOptions;
+		try {
+			solverOptions = new SolverOptions().maxMoves(maxMoves)
+					.maxTime(maxTime).tableCapacity(tableCapacity)
+					.loadFactor(loadFactor).engine(engine).searchMode(searchMode)
+					.symmetry(!cmd.hasOption("no-symmetry")).threads(threads)
+					.chunkSize(chunkSize);
+			if (cmd.hasOption("scratch-dir")) {
+				solverOptions.scratchDirectory(new File(cmd
+						.getOptionValue("scratch-dir")));
+			}
+			solverOptions.partitions(Integer.parseInt(cmd.getOptionValue(
+					"partitions",
+					Integer.toString(SolverOptions.DEFAULT_PARTITIONS, 10)), 10));
+			if (cmd.hasOption("memory-limit")) {
+				solverOptions.memoryLimit(Long.parseLong(
+						cmd.getOptionValue("memory-limit"), 10) << 20);
+			}
+			if (cmd.hasOption("disk-limit")) {
+				solverOptions.diskLimit(Long.parseLong(
+						cmd.getOptionValue("disk-limit"), 10) << 20);
+			}
+			solverOptions.endMoveCache(Integer.parseInt(cmd.getOptionValue(
+					"end-move-cache",
+					Integer.toString(SolverOptions.DEFAULT_END_MOVE_CACHE, 10)), 10));
+			if (cmd.hasOption("solution-cache")) {
+				solverOptions.solutionCache(SolutionCache.open(new File(cmd
+						.getOptionValue("solution-cache")), Integer.parseInt(cmd
+						.getOptionValue("solution-cache-size", Integer.toString(
+								SolutionCache.DEFAULT_CAPACITY, 10)), 10)));
+			}
+			solverOptions.pool(new ForkJoinPool(threads));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			formatter.printHelp("Solver", options);
+			System.exit(1);
+			return;
+		}
+		boolean printStats = cmd.hasOption("stats");
+		if (printStats || cmd.hasOption("jmx")) {
+			solverOptions.metrics(new SolverMetrics());
+		}
+		if (cmd.hasOption("jmx")) {
+			try {
+				System.out.println("Publishing statistics as "
+						+ solverOptions.getMetrics().register("Solver"));
+			} catch (JMException e) {
+				System.out.println("*** Error: " + e.getMessage() + " ***");
+			}
+		}
+
+		if (cmd.hasOption("bench")) {
+			bench(cmd, solverOptions);
+			return;
+		}
+
+		if (cmd.hasOption("batch")) {
+			batch(cmd, solverOptions, threads);
+			return;
+		}
+
+		if (cmd.hasOption("serve")) {
+			SolverServer server = new SolverServer(new File(
+					cmd.getOptionValue("board-dir", "boards")), library(cmd),
+					cmd.hasOption("endgame") ? new File(
+							cmd.getOptionValue("endgame")) : null,
+					solverOptions);
+			System.out.println("Listening on "
+					+ server.start(Integer.parseInt(
+							cmd.getOptionValue("serve"), 10), threads));
+			return;
+		}
+
 		Board board;
+        BoardLibrary library = library(cmd);
+        PuzzleFile puzzleFile = null;
+        Robot[] robots = null;
         try {
-            board = new Board(new FileInputStream(new File(boardFile)));
+            if (library != null) {
+                board = library.board(boardFile);
+                robots = library.robots(boardFile);
+            } else {
+                puzzleFile = PuzzleFile.open(new File(boardFile));
+                board = puzzleFile.getBoard();
+                try {
+                    robots = puzzleFile.getRobots();
+                } catch (IllegalArgumentException e) {
+                    robots = null;
+                }
+            }
         } catch (IOException e) {
-            System.out.println("*** Error: File " + boardFile + " not found ***");
+            System.out.println("*** Error: Board " + boardFile + " not found ***");
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println("*** Error: " + e.getMessage() + " ***");
             return;
         }
 
-        Robot[] robots = null;
-        int targetRobot = 0;
-        
-        try {
-        	robots = Robot.robotSet(new FileInputStream(new File(boardFile)));
-        	targetRobot = 0;
-        } catch (IOException e) {
-        	System.out.println(e);
-        	System.out.println(e.getStackTrace());
-        	robots = null;
+        if (cmd.hasOption("endgame")) {
+            solverOptions.endgame(EndgameDatabase.open(board, new File(cmd
+                    .getOptionValue("endgame"))));
+        }
+
+        if (puzzleFile != null) {
+            try {
+                if (puzzleFile.hasScenarios()) {
+                    scenarios(puzzleFile, board, solverOptions, printStats);
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("*** Error: " + e.getMessage() + " ***");
+                return;
+            } finally {
+                puzzleFile.close();
+            }
         }
+
+        int targetRobot = 0;
         
         if (robots == null) {
         	System.out.println("File contains no information on robots, use random.");
@@ -389,18 +1216,30 @@ public class Solver {
 
         long start = System.nanoTime();
 		Solver solver = new Solver(board, robots, target, targetRobot,
-				maxMoves, maxTime);
+				solverOptions);
         long end = System.nanoTime();
         double seconds = (end - start) / 1000000000.0;
 
         if (solver.solution() == null) {
-            System.out.println("No solution found with " + maxMoves
-                    + " moves or aborted after " + seconds + " seconds.");
+            if (solver.isDiskFull()) {
+                System.out.println("Aborted after " + seconds
+                        + " seconds: the search files reached the disk limit.");
+            } else {
+                System.out.println("No solution found with " + maxMoves
+                        + " moves or aborted after " + seconds + " seconds.");
+            }
+            if (printStats) {
+                System.out.println(solver.stats());
+            }
             return;
         }
 
         System.out.println("Found solution in " + seconds + " seconds with "
                 + solver.moves() + " moves.");
+        System.out.println(String.join(", ", solver.moveList()));
+        if (printStats) {
+            System.out.println(solver.stats());
+        }
 
         if (graphical) {
         	File dir = null;
@@ -474,4 +1313,136 @@ public class Solver {
             }
         }
     }
+
+    /**
+     * Solves a corpus of puzzles, either drawn from a seed for the given
+     * boards or read from a file, and prints a report per board.
+     */
+    private static void bench(CommandLine cmd, SolverOptions options)
+            throws IOException {
+        Corpus corpus;
+        String corpusIn = cmd.getOptionValue("corpus-in");
+        if (corpusIn != null) {
+            Reader reader = new FileReader(corpusIn);
+            try {
+                corpus = Corpus.read(reader);
+            } finally {
+                reader.close();
+            }
+        } else {
+            int size = Integer.parseInt(cmd.getOptionValue("corpus-size",
+                    Integer.toString(CorpusBenchmark.DEFAULT_SIZE, 10)), 10);
+            long seed = Long.parseLong(cmd.getOptionValue("seed",
+                    Long.toString(CorpusBenchmark.DEFAULT_SEED, 10)), 10);
+            corpus = new Corpus();
+            for (String boardFile : cmd.getOptionValues("board")) {
+                corpus.generate(boardFile, new Board(new FileInputStream(
+                        boardFile)), size, CorpusBenchmark.DEFAULT_ROBOTS,
+                        seed);
+            }
+        }
+
+        String corpusOut = cmd.getOptionValue("corpus-out");
+        if (corpusOut != null) {
+            Writer writer = new FileWriter(corpusOut);
+            try {
+                corpus.write(writer);
+            } finally {
+                writer.close();
+            }
+            System.out.println("Wrote " + corpus.size() + " puzzles to "
+                    + corpusOut + ".");
+        }
+
+        CorpusBenchmark benchmark = new CorpusBenchmark(options);
+        for (String boardFile : corpus.getBoardFiles()) {
+            Board board = new Board(new FileInputStream(boardFile));
+            if (cmd.hasOption("endgame")) {
+                options.endgame(EndgameDatabase.open(board, new File(cmd
+                        .getOptionValue("endgame"))));
+            }
+            System.out.println("Board " + boardFile + ":");
+            System.out.println(benchmark.run(board,
+                    corpus.getPuzzles(boardFile, board)));
+            System.out.println();
+        }
+        if (cmd.hasOption("stats")) {
+            System.out.println(options.getMetrics());
+            if (options.getSolutionCache() != null) {
+                System.out.println(options.getSolutionCache());
+            }
+        }
+    }
+
+    /**
+     * @return the library given with <code>--library</code>, or null
+     */
+    private static BoardLibrary library(CommandLine cmd) throws IOException {
+        return cmd.hasOption("library") ? BoardLibrary.open(new File(cmd
+                .getOptionValue("library"))) : null;
+    }
+
+    /**
+     * Solves the scenarios following the board in its file one at a time and
+     * prints a line for each.
+     */
+    private static void scenarios(PuzzleFile file, Board board,
+            SolverOptions options, boolean printStats) {
+        int count = 0, solved = 0;
+        long start = System.nanoTime();
+        SolverEngine engine = options.getSearchMode() == SolverOptions
+                .SearchMode.ASTAR ? new SolverEngine(board, options) : null;
+        for (Puzzle puzzle : file) {
+            count++;
+            Robot[] robots = file.robots(puzzle);
+            Solver solver = new Solver(board, robots, puzzle.getTarget(),
+                    puzzle.getTargetRobot(), options, engine);
+            String prefix = "Scenario " + count + ": "
+                    + robots[puzzle.getTargetRobot()].getLabel() + " to "
+                    + puzzle.getTarget() + ": ";
+            if (solver.solution() == null) {
+                System.out.println(prefix + "no solution"
+                        + (solver.isTimedOut() ? " (timed out)"
+                                : solver.isDiskFull() ? " (disk limit)" : ""));
+            } else {
+                solved++;
+                System.out.println(prefix + solver.moves() + " moves, "
+                        + String.join(", ", solver.moveList()));
+            }
+            if (printStats) {
+                System.out.println(solver.stats());
+            }
+        }
+        System.out.println("Solved " + solved + " of " + count
+                + " scenarios in " + (System.nanoTime() - start) / 1e9
+                + " seconds.");
+    }
+
+    /**
+     * Solves the JSON lines from the file given with <code>--batch</code>, or
+     * from standard input, and writes the results to standard output.
+     */
+    private static void batch(CommandLine cmd, SolverOptions options,
+            int threads) throws IOException {
+        JsonBatch batch = new JsonBatch(new File(cmd.getOptionValue(
+                "board-dir", "boards")), library(cmd),
+                cmd.hasOption("endgame") ? new File(
+                        cmd.getOptionValue("endgame")) : null, options,
+                threads);
+        String file = cmd.getOptionValue("batch");
+        BufferedReader in = new BufferedReader(file != null ? new FileReader(
+                file) : new InputStreamReader(System.in,
+                StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8));
+        try {
+            batch.run(in, out);
+        } finally {
+            in.close();
+        }
+        if (cmd.hasOption("stats")) {
+            // standard output only carries the results
+            System.err.println(options.getMetrics());
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal client for {@link SolverServer}.
+ *
+ * @author Markus Schepke
+ */
+public class SolverClient {
+
+    private final URL solve;
+
+    /**
+     * @param base
+     *            the address of the server, e.g.
+     *            <code>http://localhost:8314/</code>
+     */
+    public SolverClient(URL base) throws IOException {
+        this.solve = new URL(base, "solve");
+    }
+
+    /**
+     * Sends one request to the server.
+     *
+     * @param request
+     *            the request as JSON
+     * @return the answer as JSON, which describes the error if the request
+     *         was rejected
+     */
+    public String solve(String request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) solve
+                .openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(request.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                out.close();
+            }
+            InputStream in = connection.getResponseCode() < 400 ? connection
+                    .getInputStream() : connection.getErrorStream();
+            try {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Sends the requests read from standard input, one JSON object per line,
+     * prints the answers and finally the distribution of round trip times.
+     *
+     * @param args
+     *            the address of the server, by default
+     *            <code>http://localhost:8314/</code>
+     */
+    public static void main(String[] args) throws IOException {
+        String base = args.length > 0 ? args[0] : "http://localhost:"
+                + SolverServer.DEFAULT_PORT + "/";
+        SolverClient client = new SolverClient(new URL(base));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                System.in, StandardCharsets.UTF_8));
+        List<Double> latencies = new ArrayList<Double>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            String answer = client.solve(line);
+            latencies.add((System.nanoTime() - start) / 1e6);
+            System.out.println(answer);
+        }
+        if (latencies.isEmpty()) {
+            return;
+        }
+        Collections.sort(latencies);
+        System.err.printf("%d requests, round trip p50 %.2f ms, p95 %.2f ms, "
+                + "p99 %.2f ms, max %.2f ms%n", latencies.size(),
+                percentile(latencies, 0.5), percentile(latencies, 0.95),
+                percentile(latencies, 0.99),
+                latencies.get(latencies.size() - 1));
+    }
+
+    private static double percentile(List<Double> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+}
@@ -0,0 +1,477 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A long-lived solver bound to one {@link Board}. Unlike {@link Solver},
+ * which runs its search in the constructor, an engine keeps its node arrays,
+ * open buckets, transposition table and lower bound tables between calls to
+ * {@link #solve}, and only clears them. Once the buffers have grown to the
+ * size the puzzles need, solving allocates next to nothing, so thousands of
+ * puzzles can be solved without putting any pressure on the garbage
+ * collector.
+ *
+ * The search is the A* search of {@link SolverOptions.SearchMode#ASTAR} on
+ * primitive arrays, so every solution found by {@link #solve} is optimal.
+ * {@link #solveAnytime} finds a first solution quickly and then improves it
+ * for as long as the time allows. Progress is reported to a
+ * {@link SolverListener}, and a running search can be stopped with
+ * {@link #cancel()} from another thread. Apart from that, an engine is not
+ * thread safe; use one engine per thread.
+ *
+ * @author Markus Schepke
+ */
+public class SolverEngine {
+
+    private static final int    INITIAL_BUCKET_SIZE = 64;
+    private static final int    PROGRESS_INTERVAL   = (1 << 16) - 1;
+
+    private final Board         board;
+    private final SlideEngine   engine;
+    private final boolean       symmetric;
+    private final double        defaultMaxTime;
+    private final int           defaultMaxMoves;
+
+    private final StateTable    visited;
+    private final int[][]       boundsByTarget;
+    private final int[]         dests;
+
+    /** scratch space for moving the target robot alone */
+    private final int[]         cellMoves, cellParents, cellQueue;
+
+    private StateEncoding       encoding;
+
+    /** the nodes of the search: state, parent node index and moves */
+    private long[]              states;
+    private int[]               parents;
+    private int[]               depths;
+    private int                 size;
+
+    /** the open nodes by estimated total number of moves */
+    private int[][]             buckets             = new int[0][];
+    private int[]               bucketSizes         = new int[0];
+
+    private int                 open;
+
+    /** the puzzle currently solved */
+    private long                initialState;
+    private int                 targetRobot;
+    private int                 targetCell;
+    private int[]               bounds;
+    private long                started;
+
+    /** the best solution found, in searched (possibly canonical) states */
+    private long[]              path                = new long[0];
+    private int                 pathLength;
+    private boolean             optimal;
+    private long                expanded;
+    private long                generated;
+    private long                duplicates;
+    private int                 peakOpen;
+
+    private SolverListener      listener;
+    private volatile boolean    cancelled;
+
+    public SolverEngine(Board board) {
+        this(board, new SolverOptions());
+    }
+
+    /**
+     * @param options
+     *            the engine, table sizes and symmetry setting to use, as well
+     *            as the limits for {@link #solve(Robot[], Point, int)}
+     */
+    public SolverEngine(Board board, SolverOptions options) {
+        this.board = board;
+        this.engine = options.getEngine().create(board);
+        this.symmetric = options.isSymmetry();
+        this.defaultMaxMoves = options.getMaxMoves();
+        this.defaultMaxTime = options.getMaxTime();
+        this.visited = new StateTable(options.getTableCapacity(),
+                options.getLoadFactor());
+        this.boundsByTarget = new int[board.getWidth() * board.getHeight()][];
+        this.dests = new int[Board.DIRECTIONS.length];
+        int cells = board.getWidth() * board.getHeight();
+        this.cellMoves = new int[cells];
+        this.cellParents = new int[cells];
+        this.cellQueue = new int[cells];
+        this.states = new long[options.getTableCapacity()];
+        this.parents = new int[states.length];
+        this.depths = new int[states.length];
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public int solve(Robot[] robots, Point target, int targetRobot) {
+        return solve(robots, target, targetRobot, defaultMaxMoves,
+                defaultMaxTime);
+    }
+
+    /**
+     * Searches an optimal solution for moving the given robot onto the
+     * target. The solution is kept until the next call and can be retrieved
+     * with {@link #solution()} or {@link #result()}.
+     *
+     * @return the number of moves of the solution, or -1 if none could be
+     *         found within the limits
+     */
+    public int solve(Robot[] robots, Point target, int targetRobot,
+            int maxMoves, double maxTime) {
+        long end = prepare(robots, target, targetRobot, maxMoves, maxTime);
+        optimal = search(maxMoves, end) && pathLength > 0;
+        cancelled = false;
+        return moves();
+    }
+
+    public int solveAnytime(Robot[] robots, Point target, int targetRobot) {
+        return solveAnytime(robots, target, targetRobot, defaultMaxMoves,
+                defaultMaxTime);
+    }
+
+    /**
+     * Searches a solution as quickly as possible, and then keeps improving
+     * it until it has been proven optimal or the time is up. The first passes
+     * are greedy: they only move the target robot, first with all other
+     * robots where they are, then after each possible single move of another
+     * robot. The final pass is an A* search for a solution shorter than the
+     * best one so far. Every improvement is reported to the listener.
+     *
+     * @return the number of moves of the best solution found, or -1 if none
+     *         could be found within the limits
+     */
+    public int solveAnytime(Robot[] robots, Point target, int targetRobot,
+            int maxMoves, double maxTime) {
+        long end = prepare(robots, target, targetRobot, maxMoves, maxTime);
+
+        greedy(initialState, maxMoves, false);
+        int[] blockerDests = new int[Board.DIRECTIONS.length];
+        for (int i = 0; i < robots.length && !cancelled; i++) {
+            if (i == targetRobot) {
+                continue;
+            }
+            int count = engine.reachable(i, initialState, encoding,
+                    blockerDests);
+            for (int d = 0; d < count; d++) {
+                long state = encoding.move(initialState, i, blockerDests[d]);
+                int limit = pathLength > 0 ? pathLength - 2 : maxMoves;
+                greedy(state, limit - 1, true);
+            }
+        }
+
+        int before = pathLength;
+        boolean complete = search(pathLength > 0 ? pathLength - 2 : maxMoves,
+                end);
+        optimal = complete && pathLength > 0;
+        if (pathLength != before && listener != null) {
+            listener.improved(result());
+        }
+        cancelled = false;
+        return moves();
+    }
+
+    /**
+     * Stops the search currently running, or the next one if there is none,
+     * as soon as possible. The best solution found until then is kept. Can
+     * be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public void setListener(SolverListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the number of moves of the last solution, or -1 if there is
+     *         none
+     */
+    public int moves() {
+        return pathLength - 1;
+    }
+
+    /**
+     * @return true if the last solution is proven to be optimal
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * @return the configurations along the last solution found, in the
+     *         order of the robots passed to {@link #solve}, or null if there
+     *         is none
+     */
+    public List<Point[]> solution() {
+        if (pathLength == 0) {
+            return null;
+        }
+        List<Point[]> result = new ArrayList<Point[]>(pathLength);
+        long actual = initialState;
+        for (int g = 0; g < pathLength; g++) {
+            if (g > 0) {
+                actual = symmetric ? encoding.follow(actual, path[g - 1],
+                        path[g]) : path[g];
+            }
+            result.add(encoding.decode(actual));
+        }
+        return result;
+    }
+
+    /**
+     * @return the outcome of the last solve
+     */
+    public SolverResult result() {
+        return new SolverResult(solution(), optimal, expanded,
+                (System.nanoTime() - started) / 1e9);
+    }
+
+    /**
+     * @return the number of search nodes created by the last search pass
+     */
+    public int nodes() {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes expanded by the last solve
+     */
+    public long expanded() {
+        return expanded;
+    }
+
+    /**
+     * @return the number of successors produced by the last solve, including
+     *         duplicates
+     */
+    public long generated() {
+        return generated;
+    }
+
+    /**
+     * @return the number of successors and open nodes of the last solve
+     *         dropped because their configuration had been expanded before
+     */
+    public long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the largest number of open nodes at any time of the last solve
+     */
+    public int peakOpen() {
+        return peakOpen;
+    }
+
+    /**
+     * Sets up a new puzzle.
+     *
+     * @return the deadline in terms of {@link System#nanoTime()}
+     */
+    private long prepare(Robot[] robots, Point target, int targetRobot,
+            int maxMoves, double maxTime) {
+        started = System.nanoTime();
+        if (encoding == null || encoding.getNumberRobots() != robots.length) {
+            encoding = new StateEncoding(board, robots.length);
+        }
+        this.targetRobot = targetRobot;
+        this.targetCell = board.cell(target);
+        this.bounds = bounds(targetCell);
+        initialState = encoding.encode(robots);
+        if (path.length < maxMoves + 1) {
+            path = new long[maxMoves + 1];
+        }
+        pathLength = 0;
+        optimal = false;
+        expanded = 0;
+        generated = 0;
+        duplicates = 0;
+        peakOpen = 0;
+        return (long) (started + maxTime * 1e9);
+    }
+
+    /**
+     * Moves only the target robot, keeping all other robots where they are
+     * in the given state, and replaces the current {@link #path} if that
+     * leads to a shorter solution.
+     *
+     * @param state
+     *            the state to start from
+     * @param maxMoves
+     *            the maximal number of moves of the target robot
+     * @param afterMove
+     *            whether the state is one move after {@link #initialState}
+     */
+    private void greedy(long state, int maxMoves, boolean afterMove) {
+        if (maxMoves < 0) {
+            return;
+        }
+        int from = encoding.cell(state, targetRobot);
+        Arrays.fill(cellMoves, -1);
+        cellMoves[from] = 0;
+        cellQueue[0] = from;
+        for (int head = 0, tail = 1; head < tail; head++) {
+            int cell = cellQueue[head];
+            if (cell == targetCell) {
+                int prefix = afterMove ? 2 : 1;
+                pathLength = prefix + cellMoves[cell];
+                path[0] = initialState;
+                for (int g = pathLength - 1; g >= prefix; g--) {
+                    path[g] = encoding.move(state, targetRobot, cell);
+                    cell = cellParents[cell];
+                }
+                path[prefix - 1] = state;
+                if (listener != null) {
+                    listener.improved(result());
+                }
+                return;
+            }
+            if (cellMoves[cell] == maxMoves) {
+                continue;
+            }
+            long current = encoding.move(state, targetRobot, cell);
+            int count = engine.reachable(targetRobot, current, encoding,
+                    dests);
+            for (int d = 0; d < count; d++) {
+                if (cellMoves[dests[d]] < 0) {
+                    cellMoves[dests[d]] = cellMoves[cell] + 1;
+                    cellParents[dests[d]] = cell;
+                    cellQueue[tail++] = dests[d];
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs an A* pass for a solution with at most the given number of moves.
+     * If one is found, it replaces the current {@link #path}.
+     *
+     * @return true if the pass ran to completion, false if it ran out of time
+     *         or was cancelled
+     */
+    private boolean search(int maxMoves, long end) {
+        if (maxMoves < 0) {
+            return true;
+        }
+        reset(maxMoves);
+
+        long start = symmetric ? encoding.canonical(initialState, targetRobot)
+                : initialState;
+        int h0 = bounds[encoding.cell(start, targetRobot)];
+        if (h0 > maxMoves) {
+            return true;
+        }
+        int f = h0;
+        push(f, add(start, -1, 0));
+
+        while (f <= maxMoves) {
+            if (bucketSizes[f] == 0) {
+                f++;
+                if (listener != null) {
+                    listener.progress(f, expanded, open);
+                }
+                continue;
+            }
+            int index = buckets[f][--bucketSizes[f]];
+            open--;
+            long state = states[index];
+
+            if (!visited.add(state)) {
+                duplicates++;
+                continue;
+            }
+
+            int robotCell = encoding.cell(state, targetRobot);
+            if (robotCell == targetCell) {
+                pathLength = depths[index] + 1;
+                for (int i = index; i >= 0; i = parents[i]) {
+                    path[depths[i]] = states[i];
+                }
+                return true;
+            }
+
+            if (cancelled || ((expanded & 0x3FF) == 0
+                    && System.nanoTime() >= end)) {
+                return false;
+            }
+
+            if ((++expanded & PROGRESS_INTERVAL) == 0 && listener != null) {
+                listener.progress(f, expanded, open);
+            }
+
+            int g = depths[index] + 1;
+            for (int i = 0, n = encoding.getNumberRobots(); i < n; i++) {
+                int count = engine.reachable(i, state, encoding, dests);
+                for (int d = 0; d < count; d++) {
+                    long child = encoding.move(state, i, dests[d]);
+                    if (symmetric) {
+                        child = encoding.canonical(child, targetRobot);
+                    }
+                    generated++;
+                    if (visited.contains(child)) {
+                        duplicates++;
+                        continue;
+                    }
+                    int h = bounds[i == targetRobot ? dests[d] : robotCell];
+                    if (h > maxMoves - g) {
+                        continue;
+                    }
+                    push(g + h, add(child, index, g));
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void reset(int maxMoves) {
+        if (buckets.length < maxMoves + 1) {
+            int old = buckets.length;
+            buckets = Arrays.copyOf(buckets, maxMoves + 1);
+            bucketSizes = Arrays.copyOf(bucketSizes, maxMoves + 1);
+            for (int i = old; i <= maxMoves; i++) {
+                buckets[i] = new int[INITIAL_BUCKET_SIZE];
+            }
+        }
+        Arrays.fill(bucketSizes, 0);
+        visited.clear();
+        size = 0;
+        open = 0;
+    }
+
+    private int[] bounds(int targetCell) {
+        if (boundsByTarget[targetCell] == null) {
+            boundsByTarget[targetCell] = board.lowerBounds(targetCell);
+        }
+        return boundsByTarget[targetCell];
+    }
+
+    private int add(long state, int parent, int depth) {
+        if (size == states.length) {
+            int length = Math.max(16, 2 * size);
+            states = Arrays.copyOf(states, length);
+            parents = Arrays.copyOf(parents, length);
+            depths = Arrays.copyOf(depths, length);
+        }
+        states[size] = state;
+        parents[size] = parent;
+        depths[size] = depth;
+        return size++;
+    }
+
+    private void push(int f, int index) {
+        // within a bucket the nodes added last are taken first, which are the
+        // ones closest to the target
+        if (bucketSizes[f] == buckets[f].length) {
+            buckets[f] = Arrays.copyOf(buckets[f], 2 * bucketSizes[f]);
+        }
+        buckets[f][bucketSizes[f]++] = index;
+        if (++open > peakOpen) {
+            peakOpen = open;
+        }
+    }
+}
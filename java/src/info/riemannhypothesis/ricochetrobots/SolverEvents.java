@@ -0,0 +1,143 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the {@link Solver}. They are only committed
+ * while a recording with them enabled is running, so they can stay in place
+ * in production; a disabled event costs an allocation and a flag check.
+ *
+ * @author Markus Schepke
+ */
+public final class SolverEvents {
+
+    private static final String CATEGORY = "Ricochet Robots";
+
+    private SolverEvents() {
+    }
+
+    /**
+     * A complete solver run, from the construction of the {@link Solver} to
+     * its result.
+     */
+    @Name("info.riemannhypothesis.ricochetrobots.Solve")
+    @Label("Solve")
+    @Category(CATEGORY)
+    @Description("A complete search for a solution")
+    @StackTrace(false)
+    public static class Solve extends Event {
+        @Label("Board")
+        @Description("Fingerprint of the board, see Board.fingerprint()")
+        public String  board;
+
+        @Label("Width")
+        public int     width;
+
+        @Label("Height")
+        public int     height;
+
+        @Label("Target X")
+        public int     targetX;
+
+        @Label("Target Y")
+        public int     targetY;
+
+        @Label("Robot")
+        @Description("Index of the robot which has to reach the target")
+        public int     robot;
+
+        @Label("Search")
+        public String  search;
+
+        @Label("Result")
+        @Description("solved, unsolved, timeout or disk limit")
+        public String  result;
+
+        @Label("Moves")
+        @Description("Number of moves of the solution, -1 if none was found")
+        public int     moves;
+
+        @Label("Visited")
+        @Description("Number of configurations stored by the search")
+        public long    visited;
+
+        @Label("Expanded")
+        public long    expanded;
+
+        @Label("Allocated")
+        @DataAmount
+        public long    allocated;
+    }
+
+    /**
+     * One completed depth of a breadth first search.
+     */
+    @Name("info.riemannhypothesis.ricochetrobots.SearchDepth")
+    @Label("Search Depth")
+    @Category(CATEGORY)
+    @Description("All configurations of one depth of a breadth first search expanded")
+    @StackTrace(false)
+    public static class Depth extends Event {
+        @Label("Board")
+        public String board;
+
+        @Label("Depth")
+        public int    depth;
+
+        @Label("Expanded")
+        @Description("Number of configurations of this depth expanded")
+        public long   expanded;
+
+        @Label("Generated")
+        @Description("Number of configurations of the next depth generated, including duplicates")
+        public long   generated;
+
+        @Label("Duplicates")
+        public long   duplicates;
+
+        @Label("Frontier")
+        @Description("Number of configurations waiting for the next depth")
+        public long   frontier;
+
+        @Label("Lookahead Time")
+        @Timespan
+        public long   lookahead;
+    }
+
+    /**
+     * A search stopped by its time limit.
+     */
+    @Name("info.riemannhypothesis.ricochetrobots.Timeout")
+    @Label("Solver Timeout")
+    @Category(CATEGORY)
+    @Description("A search ran out of time before it found a solution")
+    public static class Timeout extends Event {
+        @Label("Board")
+        public String board;
+
+        @Label("Search")
+        public String search;
+
+        @Label("Max Time")
+        @Timespan
+        public long   maxTime;
+
+        @Label("Depth")
+        @Description("Deepest depth reached")
+        public int    depth;
+
+        @Label("Visited")
+        public long   visited;
+    }
+
+    static String board(Board board) {
+        return String.format("%016x", board.fingerprint());
+    }
+}
@@ -0,0 +1,31 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * Receives reports from a running {@link SolverEngine}. The methods are
+ * called on the thread running the search, so they should return quickly.
+ *
+ * @author Markus Schepke
+ */
+public interface SolverListener {
+
+    /**
+     * Called whenever the search moves on to a higher estimate of the total
+     * number of moves, and periodically in between.
+     *
+     * @param depth
+     *            the estimated total number of moves of the nodes currently
+     *            expanded
+     * @param expanded
+     *            the number of nodes expanded so far
+     * @param frontier
+     *            the number of nodes waiting to be expanded
+     */
+    void progress(int depth, long expanded, int frontier);
+
+    /**
+     * Called whenever a solution with fewer moves than the previous best one
+     * has been found.
+     */
+    default void improved(SolverResult result) {
+    }
+}
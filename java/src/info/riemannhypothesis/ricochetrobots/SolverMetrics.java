@@ -0,0 +1,214 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Totals of the {@link SolverStats} of many solver runs, for example all
+ * those of a server process. Pass an instance to
+ * {@link SolverOptions#metrics(SolverMetrics)} to have every run recorded,
+ * and {@link #register} it to publish the totals via JMX.
+ *
+ * @author Markus Schepke
+ */
+public class SolverMetrics implements SolverMetricsMXBean {
+
+    public static final String DOMAIN = "info.riemannhypothesis.ricochetrobots";
+
+    private long               solves;
+    private long               solved;
+    private long               timedOut;
+    private long               generated;
+    private long               expanded;
+    private long               duplicates;
+    private int                peakFrontier;
+    private double             seconds;
+    private double             maxSeconds;
+    private double             moveGenerationSeconds;
+    private double             lookaheadSeconds;
+    private long               allocatedBytes;
+    private long               endMoveHits;
+    private long               endMoveMisses;
+    private long               solutionCacheHits;
+    private long               solutionCacheMisses;
+    private final Set<SolverStats.Counter> measured = EnumSet
+            .noneOf(SolverStats.Counter.class);
+
+    /**
+     * Adds the counters of one run.
+     *
+     * @param solved
+     *            whether the run found a solution
+     * @param timedOut
+     *            whether the run was stopped by the time limit
+     */
+    public synchronized void record(SolverStats stats, boolean solved,
+            boolean timedOut) {
+        solves++;
+        if (solved) {
+            this.solved++;
+        }
+        if (timedOut) {
+            this.timedOut++;
+        }
+        measured.addAll(stats.getMeasured());
+        generated += stats.getGenerated();
+        expanded += stats.getExpanded();
+        duplicates += stats.getDuplicates();
+        peakFrontier = Math.max(peakFrontier, stats.getPeakFrontier());
+        seconds += stats.getSeconds();
+        maxSeconds = Math.max(maxSeconds, stats.getSeconds());
+        moveGenerationSeconds += stats.getMoveGenerationSeconds();
+        lookaheadSeconds += stats.getLookaheadSeconds();
+        if (stats.getAllocatedBytes() > 0) {
+            allocatedBytes += stats.getAllocatedBytes();
+        }
+        endMoveHits += stats.getEndMoveHits();
+        endMoveMisses += stats.getEndMoveMisses();
+        solutionCacheHits += stats.getSolutionCacheHits();
+        solutionCacheMisses += stats.getSolutionCacheMisses();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * <code>info.riemannhypothesis.ricochetrobots:type=SolverMetrics,name=&lt;name&gt;</code>.
+     *
+     * @return the name the metrics were registered under
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN
+                + ":type=SolverMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                objectName);
+        return objectName;
+    }
+
+    @Override
+    public synchronized long getSolves() {
+        return solves;
+    }
+
+    @Override
+    public synchronized long getSolved() {
+        return solved;
+    }
+
+    @Override
+    public synchronized long getTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public synchronized long getGenerated() {
+        return generated;
+    }
+
+    @Override
+    public synchronized long getExpanded() {
+        return expanded;
+    }
+
+    @Override
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public synchronized int getPeakFrontier() {
+        return peakFrontier;
+    }
+
+    @Override
+    public synchronized double getSeconds() {
+        return seconds;
+    }
+
+    @Override
+    public synchronized double getMaxSeconds() {
+        return maxSeconds;
+    }
+
+    @Override
+    public synchronized double getMoveGenerationSeconds() {
+        return moveGenerationSeconds;
+    }
+
+    @Override
+    public synchronized double getLookaheadSeconds() {
+        return lookaheadSeconds;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public synchronized long getEndMoveHits() {
+        return endMoveHits;
+    }
+
+    @Override
+    public synchronized long getEndMoveMisses() {
+        return endMoveMisses;
+    }
+
+    @Override
+    public synchronized long getSolutionCacheHits() {
+        return solutionCacheHits;
+    }
+
+    @Override
+    public synchronized long getSolutionCacheMisses() {
+        return solutionCacheMisses;
+    }
+
+    @Override
+    public synchronized void reset() {
+        solves = solved = timedOut = 0;
+        generated = expanded = duplicates = 0;
+        peakFrontier = 0;
+        seconds = maxSeconds = moveGenerationSeconds = lookaheadSeconds = 0;
+        allocatedBytes = 0;
+        endMoveHits = endMoveMisses = 0;
+        solutionCacheHits = solutionCacheMisses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d solves: %d solved, %d timed out%n"
+                + "generated %s, expanded %s, duplicates %s, "
+                + "peak frontier %s%n"
+                + "%.3f s in total, %.3f s max, %s move generation, "
+                + "%s lookahead, %d bytes allocated%n"
+                + "end move cache %s%n" + "solution cache %s", solves,
+                solved, timedOut,
+                format(SolverStats.Counter.GENERATED, "%d", generated),
+                format(SolverStats.Counter.EXPANDED, "%d", expanded),
+                format(SolverStats.Counter.DUPLICATES, "%d", duplicates),
+                format(SolverStats.Counter.PEAK_FRONTIER, "%d", peakFrontier),
+                seconds, maxSeconds,
+                format(SolverStats.Counter.MOVE_GENERATION, "%.3f s",
+                        moveGenerationSeconds),
+                format(SolverStats.Counter.LOOKAHEAD, "%.3f s",
+                        lookaheadSeconds), allocatedBytes,
+                format(SolverStats.Counter.END_MOVE_CACHE,
+                        "%d hits, %d misses", endMoveHits, endMoveMisses),
+                format(SolverStats.Counter.SOLUTION_CACHE,
+                        "%d hits, %d misses", solutionCacheHits,
+                        solutionCacheMisses));
+    }
+
+    /**
+     * @return the values formatted if any run measured the counter,
+     *         otherwise n/a
+     */
+    private String format(SolverStats.Counter counter, String format,
+            Object... values) {
+        return SolverStats.format(measured.contains(counter), format, values);
+    }
+}
@@ -0,0 +1,43 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * The management interface of {@link SolverMetrics}.
+ *
+ * @author Markus Schepke
+ */
+public interface SolverMetricsMXBean {
+
+    long getSolves();
+
+    long getSolved();
+
+    long getTimedOut();
+
+    long getGenerated();
+
+    long getExpanded();
+
+    long getDuplicates();
+
+    int getPeakFrontier();
+
+    double getSeconds();
+
+    double getMaxSeconds();
+
+    double getMoveGenerationSeconds();
+
+    double getLookaheadSeconds();
+
+    long getAllocatedBytes();
+
+    long getEndMoveHits();
+
+    long getEndMoveMisses();
+
+    long getSolutionCacheHits();
+
+    long getSolutionCacheMisses();
+
+    void reset();
+}
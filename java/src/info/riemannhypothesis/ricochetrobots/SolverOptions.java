@@ -0,0 +1,379 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Limits and tuning parameters for a {@link Solver} run. All setters return
+ * the options object itself, so they can be chained.
+ *
+ * @author Markus Schepke
+ */
+public class SolverOptions {
+
+    /**
+     * The implementations of {@link SlideEngine} the solver can generate
+     * moves with.
+     */
+    public enum Engine {
+        /** the slide table of {@link Board} */
+        TABLE,
+        /** row and column bitmasks, see {@link BitBoard} */
+        BITBOARD;
+
+        public SlideEngine create(Board board) {
+            return this == BITBOARD ? new BitBoard(board) : board;
+        }
+    }
+
+    /**
+     * The search algorithms the solver can use.
+     */
+    public enum SearchMode {
+        /**
+         * breadth first search with a lookahead for the target robot, which
+         * stops at the first solution the lookahead finds
+         */
+        BFS,
+        /**
+         * A* search guided by {@link Board#lowerBounds(int)}, see
+         * {@link SolverEngine}; returns an optimal solution
+         */
+        ASTAR,
+        /**
+         * iterative deepening A* with the same bound, returns an optimal
+         * solution while keeping no open list
+         */
+        IDASTAR,
+        /**
+         * breadth first search which expands every depth in parallel, see
+         * {@link ParallelSearch}; returns an optimal solution
+         */
+        PARALLEL,
+        /**
+         * breadth first search which keeps its depths in files, see
+         * {@link ExternalSearch}; returns an optimal solution
+         */
+        EXTERNAL;
+    }
+
+    public static final int  DEFAULT_THREADS      = Runtime.getRuntime()
+                                                          .availableProcessors();
+    public static final int  DEFAULT_CHUNK_SIZE   = 1024;
+    public static final int  DEFAULT_PARTITIONS   = 16;
+    public static final long DEFAULT_MEMORY_LIMIT = 64L << 20;
+    public static final int  DEFAULT_END_MOVE_CACHE = 1024;
+
+    private int             maxMoves         = Solver.DEFAULT_MAX_MOVES;
+    private double          maxTime          = Solver.DEFAULT_MAX_TIME;
+    private int             tableCapacity    = StateTable.DEFAULT_CAPACITY;
+    private float           loadFactor       = StateTable.DEFAULT_LOAD_FACTOR;
+    private Engine          engine           = Engine.TABLE;
+    private SearchMode      searchMode       = SearchMode.BFS;
+    private boolean         symmetry         = true;
+    private int             threads          = DEFAULT_THREADS;
+    private int             chunkSize        = DEFAULT_CHUNK_SIZE;
+    private ForkJoinPool    pool;
+    private SolverMetrics   metrics;
+    private File            scratchDirectory = new File(
+                                                   System.getProperty("java.io.tmpdir"));
+    private int             partitions       = DEFAULT_PARTITIONS;
+    private long            memoryLimit      = DEFAULT_MEMORY_LIMIT;
+    private long            diskLimit        = Long.MAX_VALUE;
+    private EndgameDatabase endgame;
+    private int             endMoveCache     = DEFAULT_END_MOVE_CACHE;
+    private SolutionCache   solutionCache;
+
+    /**
+     * @return new options with the same settings, which can be changed
+     *         without affecting these
+     */
+    public SolverOptions copy() {
+        SolverOptions copy = new SolverOptions();
+        copy.maxMoves = maxMoves;
+        copy.maxTime = maxTime;
+        copy.tableCapacity = tableCapacity;
+        copy.loadFactor = loadFactor;
+        copy.engine = engine;
+        copy.searchMode = searchMode;
+        copy.symmetry = symmetry;
+        copy.threads = threads;
+        copy.chunkSize = chunkSize;
+        copy.pool = pool;
+        copy.metrics = metrics;
+        copy.scratchDirectory = scratchDirectory;
+        copy.partitions = partitions;
+        copy.memoryLimit = memoryLimit;
+        copy.diskLimit = diskLimit;
+        copy.endgame = endgame;
+        copy.endMoveCache = endMoveCache;
+        copy.solutionCache = solutionCache;
+        return copy;
+    }
+
+    public int getMaxMoves() {
+        return maxMoves;
+    }
+
+    /**
+     * @param maxMoves
+     *            the maximal number of moves to be searched
+     */
+    public SolverOptions maxMoves(int maxMoves) {
+        this.maxMoves = maxMoves;
+        return this;
+    }
+
+    public double getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @param maxTime
+     *            the maximal search time in seconds
+     */
+    public SolverOptions maxTime(double maxTime) {
+        this.maxTime = maxTime;
+        return this;
+    }
+
+    public int getTableCapacity() {
+        return tableCapacity;
+    }
+
+    /**
+     * @param tableCapacity
+     *            the initial number of states the transposition table can hold
+     *            before it needs to grow
+     */
+    public SolverOptions tableCapacity(int tableCapacity) {
+        this.tableCapacity = tableCapacity;
+        return this;
+    }
+
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * @param loadFactor
+     *            the load factor of the transposition table
+     */
+    public SolverOptions loadFactor(float loadFactor) {
+        this.loadFactor = loadFactor;
+        return this;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @param engine
+     *            the implementation used to generate moves
+     */
+    public SolverOptions engine(Engine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * @param searchMode
+     *            the search algorithm to use
+     */
+    public SolverOptions searchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+        return this;
+    }
+
+    public boolean isSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * @param symmetry
+     *            whether to treat robots other than the target robot as
+     *            interchangeable, which shrinks the search space by up to the
+     *            factorial of their number
+     */
+    public SolverOptions symmetry(boolean symmetry) {
+        this.symmetry = symmetry;
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads
+     *            the number of threads for {@link SearchMode#PARALLEL} if no
+     *            {@link #pool(ForkJoinPool)} is given
+     */
+    public SolverOptions threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Illegal threads: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize
+     *            the number of states expanded by one task in
+     *            {@link SearchMode#PARALLEL}
+     */
+    public SolverOptions chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param pool
+     *            the pool {@link SearchMode#PARALLEL} runs on, shared by all
+     *            solves with these options and their copies, or null (the
+     *            default) for a new pool of {@link #getThreads()} threads per
+     *            solve
+     */
+    public SolverOptions pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics
+     *            the totals every run with these options is added to, or null
+     *            (the default) to record nothing
+     */
+    public SolverOptions metrics(SolverMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    /**
+     * @param scratchDirectory
+     *            the directory {@link SearchMode#EXTERNAL} creates its files
+     *            in
+     */
+    public SolverOptions scratchDirectory(File scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+        return this;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @param partitions
+     *            the number of files each depth of {@link SearchMode#EXTERNAL}
+     *            is split into; duplicates are removed one partition at a time
+     */
+    public SolverOptions partitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Illegal partitions: "
+                    + partitions);
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @param memoryLimit
+     *            the number of bytes {@link SearchMode#EXTERNAL} uses for
+     *            write buffers and sorting
+     */
+    public SolverOptions memoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    public long getDiskLimit() {
+        return diskLimit;
+    }
+
+    /**
+     * @param diskLimit
+     *            the number of bytes {@link SearchMode#EXTERNAL} may write to
+     *            the scratch directory before it gives up
+     */
+    public SolverOptions diskLimit(long diskLimit) {
+        this.diskLimit = diskLimit;
+        return this;
+    }
+
+    public EndgameDatabase getEndgame() {
+        return endgame;
+    }
+
+    /**
+     * @param endgame
+     *            the database the breadth first search looks up how the
+     *            target robot can finish on its own, instead of computing it
+     *            for every configuration; only used for targets it covers
+     */
+    public SolverOptions endgame(EndgameDatabase endgame) {
+        this.endgame = endgame;
+        return this;
+    }
+
+    public int getEndMoveCache() {
+        return endMoveCache;
+    }
+
+    /**
+     * @param endMoveCache
+     *            the number of configurations of the other robots the
+     *            breadth first search keeps the end moves of the target robot
+     *            for, see {@link EndMoveCache}
+     */
+    public SolverOptions endMoveCache(int endMoveCache) {
+        if (endMoveCache < 1) {
+            throw new IllegalArgumentException("Illegal end move cache: "
+                    + endMoveCache);
+        }
+        this.endMoveCache = endMoveCache;
+        return this;
+    }
+
+    public SolutionCache getSolutionCache() {
+        return solutionCache;
+    }
+
+    /**
+     * @param solutionCache
+     *            the cache solutions are looked up in before searching and
+     *            stored in afterwards, or null to always search
+     */
+    public SolverOptions solutionCache(SolutionCache solutionCache) {
+        this.solutionCache = solutionCache;
+        return this;
+    }
+}
@@ -0,0 +1,58 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.List;
+
+/**
+ * The outcome of a search by a {@link SolverEngine}.
+ *
+ * @author Markus Schepke
+ */
+public class SolverResult {
+
+    private final List<Point[]> solution;
+    private final boolean       optimal;
+    private final long          expanded;
+    private final double        seconds;
+
+    public SolverResult(List<Point[]> solution, boolean optimal,
+            long expanded, double seconds) {
+        this.solution = solution;
+        this.optimal = optimal;
+        this.expanded = expanded;
+        this.seconds = seconds;
+    }
+
+    /**
+     * @return the number of moves of the solution, or -1 if none was found
+     */
+    public int moves() {
+        return solution == null ? -1 : solution.size() - 1;
+    }
+
+    /**
+     * @return the configurations along the solution, or null if none was
+     *         found
+     */
+    public List<Point[]> solution() {
+        return solution;
+    }
+
+    /**
+     * @return true if the search has proven that there is no solution with
+     *         fewer moves
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * @return the number of nodes expanded by the search
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    public double getSeconds() {
+        return seconds;
+    }
+}
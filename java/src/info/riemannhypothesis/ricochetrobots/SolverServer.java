@@ -0,0 +1,192 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers solve requests over HTTP on the loopback interface, so the start
+ * and warm-up of the virtual machine is paid once instead of for every
+ * puzzle. Boards are loaded by id (their name in the {@link BoardLibrary} or
+ * the name of their file in the board directory, without
+ * <code>.txt</code>) on first use and kept in memory
+ * together with their slide tables and, if configured, their
+ * {@link EndgameDatabase}. Requests are handled by a fixed pool of worker
+ * threads.
+ * <p>
+ * <code>POST /solve</code> takes a JSON object like
+ *
+ * <pre>
+ * {"board": "3", "robots": [[0, 0], [5, 7], [9, 2], [12, 15]],
+ *  "target": [4, 6], "robot": 0}
+ * </pre>
+ *
+ * and answers with the result as JSON, see {@link RequestSolver} for all
+ * fields. Malformed requests are answered with status 400 and
+ * <code>{"error": "..."}</code>. <code>GET /boards</code> lists the ids of
+ * the boards loaded so far.
+ *
+ * @author Markus Schepke
+ */
+public class SolverServer {
+
+    public static final int    DEFAULT_PORT = 8314;
+    /** the largest request body accepted, in bytes */
+    private static final int    MAX_REQUEST  = 1 << 16;
+
+    private final RequestSolver solver;
+
+    private HttpServer          server;
+    private ExecutorService     workers;
+
+    public SolverServer(File boardDirectory, SolverOptions options) {
+        this(boardDirectory, null, options);
+    }
+
+    /**
+     * @param boardDirectory
+     *            the directory the boards are read from
+     * @param endgameDirectory
+     *            the directory of the endgame databases, see
+     *            {@link EndgameDatabase#open(Board, File)}, or null to solve
+     *            without them
+     * @param options
+     *            the settings and upper limits for all requests
+     */
+    public SolverServer(File boardDirectory, File endgameDirectory,
+            SolverOptions options) {
+        this(boardDirectory, null, endgameDirectory, options);
+    }
+
+    /**
+     * @param library
+     *            the library boards are looked up in before the board
+     *            directory, or null
+     */
+    public SolverServer(File boardDirectory, BoardLibrary library,
+            File endgameDirectory, SolverOptions options) {
+        this.solver = new RequestSolver(boardDirectory, library,
+                endgameDirectory, options, false);
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port
+     *            the port to listen on, or 0 for any free one
+     * @param threads
+     *            the number of requests solved at the same time
+     * @return the address the server listens on
+     */
+    public synchronized InetSocketAddress start(int port, int threads)
+            throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Illegal threads: " + threads);
+        }
+        // answers are written in two packets (headers and body), which
+        // without TCP_NODELAY waits for the delayed ACK of the client; the
+        // property is read once, when the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        workers = Executors.newFixedThreadPool(threads);
+        server.setExecutor(workers);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/boards", this::handleBoards);
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * Stops listening, waiting at most the given number of seconds for
+     * requests in progress.
+     */
+    public synchronized void stop(int delay) {
+        if (server != null) {
+            server.stop(delay);
+            workers.shutdown();
+            server = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * Solves a request in the format described above.
+     *
+     * @see RequestSolver#solve(Map)
+     */
+    public Map<String, Object> solve(Map<String, Object> request)
+            throws IOException {
+        return solver.solve(request);
+    }
+
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        Map<String, Object> request = null;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error(null, "Use POST"));
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(
+                    MAX_REQUEST + 1);
+            if (body.length > MAX_REQUEST) {
+                respond(exchange, 413, error(null, "Request too large"));
+                return;
+            }
+            request = Json.parseObject(new String(body,
+                    StandardCharsets.UTF_8));
+            respond(exchange, 200, Json.write(solve(request)));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(request, e.getMessage()));
+        } catch (RuntimeException | IOException e) {
+            respond(exchange, 500, error(request, e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBoards(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, Json.write(boards()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status,
+            String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String error(Map<String, Object> request,
+            String message) {
+        return Json.write(RequestSolver.error(request, message));
+    }
+
+    /**
+     * @return the ids of the boards loaded so far
+     */
+    public List<String> boards() {
+        return solver.boards();
+    }
+}
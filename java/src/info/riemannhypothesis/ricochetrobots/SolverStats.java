@@ -0,0 +1,364 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Counters collected during a single {@link Solver} run. Which counters are
+ * filled in depends on the search mode, see {@link #isMeasured(Counter)};
+ * the others stay 0 and are printed as n/a. All searches count their nodes.
+ * Only the breadth first search has a lookahead and its end move cache, and
+ * only it and IDA* measure the time spent generating moves, and that only
+ * if the run records into {@link SolverMetrics} or the flight recorder
+ * takes {@link SolverEvents.Depth} events.
+ *
+ * @author Markus Schepke
+ */
+public class SolverStats {
+
+    /**
+     * The counters which a search may or may not be able to measure.
+     */
+    public enum Counter {
+        GENERATED, EXPANDED, DUPLICATES, VISITED, PEAK_FRONTIER, DEPTHS,
+        MOVE_GENERATION, LOOKAHEAD, END_MOVE_CACHE, SOLUTION_CACHE;
+    }
+
+    /** the counters every search fills in */
+    static final Set<Counter> NODES = EnumSet.of(Counter.GENERATED,
+                                              Counter.EXPANDED,
+                                              Counter.DUPLICATES,
+                                              Counter.VISITED);
+
+    private long   generated;
+    private long   expanded;
+    private long   duplicates;
+    private long   visited;
+    private int    peakFrontier;
+    private long[] depths = new long[16];
+    private int    maxDepth;
+    private long   moveGenerationNanos;
+    private long   lookaheadNanos;
+    private long   totalNanos;
+    private long   endMoveHits;
+    private long   endMoveMisses;
+    private long   solutionCacheHits;
+    private long   solutionCacheMisses;
+    private long   allocatedBytes = -1;
+    private final Set<Counter> measured = EnumSet.noneOf(Counter.class);
+
+    /**
+     * Declares that the run fills in the given counters.
+     */
+    void measured(Counter... counters) {
+        for (Counter counter : counters) {
+            measured.add(counter);
+        }
+    }
+
+    void measured(Set<Counter> counters) {
+        measured.addAll(counters);
+    }
+
+    void generated() {
+        generated++;
+    }
+
+    void generated(long count) {
+        generated += count;
+    }
+
+    void expanded() {
+        expanded++;
+    }
+
+    void expanded(long count) {
+        expanded += count;
+    }
+
+    void duplicate() {
+        duplicates++;
+    }
+
+    void duplicates(long count) {
+        duplicates += count;
+    }
+
+    void visited(long count) {
+        visited = count;
+    }
+
+    void frontier(int size) {
+        if (size > peakFrontier) {
+            peakFrontier = size;
+        }
+    }
+
+    /**
+     * Counts a node at the given depth.
+     */
+    void depth(int depth) {
+        depth(depth, 1);
+    }
+
+    void depth(int depth, long count) {
+        if (depth >= depths.length) {
+            depths = Arrays.copyOf(depths, Math.max(depth + 1,
+                    2 * depths.length));
+        }
+        depths[depth] += count;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    void moveGeneration(long nanos) {
+        moveGenerationNanos += nanos;
+    }
+
+    void lookahead(long nanos) {
+        lookaheadNanos += nanos;
+    }
+
+    void endMoveHit() {
+        endMoveHits++;
+    }
+
+    void endMoveMiss() {
+        endMoveMisses++;
+    }
+
+    void solutionCacheHit() {
+        solutionCacheHits++;
+    }
+
+    void solutionCacheMiss() {
+        solutionCacheMisses++;
+    }
+
+    void finish(long nanos, long allocatedBytes) {
+        this.totalNanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or
+     *         -1 if the virtual machine cannot tell
+     */
+    static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+            if (sun.isThreadAllocatedMemorySupported()
+                    && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread()
+                        .getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the search of the run fills in the given counter,
+     *         otherwise it is 0 regardless of what happened
+     */
+    public boolean isMeasured(Counter counter) {
+        return measured.contains(counter);
+    }
+
+    /**
+     * @return the counters filled in by the search of the run
+     */
+    public Set<Counter> getMeasured() {
+        return EnumSet.copyOf(measured);
+    }
+
+    /**
+     * @return the number of successor configurations produced, including
+     *         duplicates
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * @return the number of configurations whose successors were generated
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * @return the number of generated configurations rejected because they
+     *         had been seen before
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the number of configurations stored by the search
+     */
+    public long getVisited() {
+        return visited;
+    }
+
+    /**
+     * @return the largest number of configurations waiting to be expanded at
+     *         any time, or 0 for searches without an open list
+     */
+    public int getPeakFrontier() {
+        return peakFrontier;
+    }
+
+    /**
+     * @return the number of configurations counted at each depth, starting
+     *         with the initial one
+     */
+    public long[] getDepthCounts() {
+        return Arrays.copyOf(depths, maxDepth + 1);
+    }
+
+    /**
+     * @return the branching factor b of a uniform tree of the deepest
+     *         depth reached with as many nodes as were counted below its
+     *         root, i.e., the solution of b + b^2 + ... + b^d = N
+     */
+    public double getEffectiveBranchingFactor() {
+        long nodes = 0;
+        for (int d = 1; d <= maxDepth; d++) {
+            nodes += depths[d];
+        }
+        if (maxDepth == 0 || nodes == 0) {
+            return 0;
+        }
+        double low = 0, high = Math.max(1, nodes);
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            double sum = 0, power = 1;
+            for (int d = 1; d <= maxDepth && sum <= nodes; d++) {
+                power *= mid;
+                sum += power;
+            }
+            if (sum < nodes) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    public double getMoveGenerationSeconds() {
+        return moveGenerationNanos / 1e9;
+    }
+
+    /**
+     * @return the time spent in the end move lookahead of the breadth first
+     *         search
+     */
+    public double getLookaheadSeconds() {
+        return lookaheadNanos / 1e9;
+    }
+
+    long getLookaheadNanos() {
+        return lookaheadNanos;
+    }
+
+    /**
+     * @return the number of lookaheads which found the end moves for their
+     *         configuration in the {@link EndMoveCache}
+     */
+    public long getEndMoveHits() {
+        return endMoveHits;
+    }
+
+    /**
+     * @return the number of lookaheads which had to compute the end moves
+     */
+    public long getEndMoveMisses() {
+        return endMoveMisses;
+    }
+
+    /**
+     * @return the share of lookaheads served from the cache, or 0 if there
+     *         were none
+     */
+    public double getEndMoveHitRate() {
+        long lookups = endMoveHits + endMoveMisses;
+        return lookups == 0 ? 0 : (double) endMoveHits / lookups;
+    }
+
+    /**
+     * @return 1 if the solution was taken from the {@link SolutionCache},
+     *         otherwise 0
+     */
+    public long getSolutionCacheHits() {
+        return solutionCacheHits;
+    }
+
+    /**
+     * @return 1 if the solution was looked up in the {@link SolutionCache}
+     *         but not found, otherwise 0
+     */
+    public long getSolutionCacheMisses() {
+        return solutionCacheMisses;
+    }
+
+    public double getSeconds() {
+        return totalNanos / 1e9;
+    }
+
+    /**
+     * @return the number of bytes allocated by the solving thread, or -1 if
+     *         the virtual machine cannot tell
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("generated %s, expanded %s, duplicates %s, "
+                + "visited %s, peak frontier %s%n"
+                + "nodes per depth %s, effective branching factor %s%n"
+                + "%.3f s in total, %s move generation, "
+                + "%s lookahead, %d bytes allocated%n"
+                + "end move cache %s%n" + "solution cache %s",
+                format(Counter.GENERATED, generated),
+                format(Counter.EXPANDED, expanded),
+                format(Counter.DUPLICATES, duplicates),
+                format(Counter.VISITED, visited),
+                format(Counter.PEAK_FRONTIER, peakFrontier),
+                format(Counter.DEPTHS, "%s", Arrays.toString(getDepthCounts())),
+                format(Counter.DEPTHS, "%.2f", getEffectiveBranchingFactor()),
+                getSeconds(),
+                format(Counter.MOVE_GENERATION, "%.3f s",
+                        getMoveGenerationSeconds()),
+                format(Counter.LOOKAHEAD, "%.3f s", getLookaheadSeconds()),
+                allocatedBytes,
+                format(Counter.END_MOVE_CACHE,
+                        "%d hits, %d misses, %.1f%% hit rate", endMoveHits,
+                        endMoveMisses, 100 * getEndMoveHitRate()),
+                format(Counter.SOLUTION_CACHE, "%d hits, %d misses",
+                        solutionCacheHits, solutionCacheMisses));
+    }
+
+    private String format(Counter counter, long value) {
+        return format(isMeasured(counter), "%d", value);
+    }
+
+    private String format(Counter counter, String format, Object... values) {
+        return format(isMeasured(counter), format, values);
+    }
+
+    /**
+     * @return the values formatted if they were measured, otherwise n/a
+     */
+    static String format(boolean measured, String format, Object... values) {
+        return measured ? String.format(format, values) : "n/a";
+    }
+}
@@ -0,0 +1,196 @@
+package info.riemannhypothesis.ricochetrobots;
+
+/**
+ * Describes how a configuration of robots is packed into a single primitive
+ * <code>long</code>: robot <code>i</code> occupies the bits
+ * <code>[i * bitsPerRobot, (i + 1) * bitsPerRobot)</code> and stores its
+ * cell index <code>y * width + x</code>. On a 16x16 board this fits up to 8
+ * robots with 8 bits each.
+ *
+ * Two packed states are equal if and only if they are equal as longs, so they
+ * can be compared with <code>==</code> and stored in a {@link StateTable}
+ * without allocating any objects.
+ *
+ * @author Markus Schepke
+ */
+public final class StateEncoding {
+
+    private final Board board;
+    private final int   numberRobots;
+    private final int   bitsPerRobot;
+    private final long  cellMask;
+
+    public StateEncoding(Board board, int numberRobots) {
+        int cells = board.getWidth() * board.getHeight();
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(cells - 1));
+        if (numberRobots < 1 || bits * numberRobots > Long.SIZE) {
+            throw new IllegalArgumentException("Cannot pack " + numberRobots
+                    + " robots on a board with " + cells + " cells");
+        }
+        this.board = board;
+        this.numberRobots = numberRobots;
+        this.bitsPerRobot = bits;
+        this.cellMask = (1L << bits) - 1;
+    }
+
+    public Board getBoard() {
+        return board;
+    }
+
+    public int getNumberRobots() {
+        return numberRobots;
+    }
+
+    public int getBitsPerRobot() {
+        return bitsPerRobot;
+    }
+
+    /**
+     * @return the cell index of the given robot in the given state
+     */
+    public int cell(long state, int robot) {
+        return (int) ((state >>> (robot * bitsPerRobot)) & cellMask);
+    }
+
+    /**
+     * @return the state which results from placing the given robot on the
+     *         given cell, all other robots staying where they are
+     */
+    public long move(long state, int robot, int cell) {
+        int shift = robot * bitsPerRobot;
+        return (state & ~(cellMask << shift)) | ((long) cell << shift);
+    }
+
+    /**
+     * @return true if any robot in the given state occupies the given cell
+     */
+    public boolean isOccupied(long state, int cell) {
+        for (int i = 0; i < numberRobots; i++) {
+            if ((int) (state & cellMask) == cell) {
+                return true;
+            }
+            state >>>= bitsPerRobot;
+        }
+        return false;
+    }
+
+    /**
+     * Brings a state into canonical form with respect to robots which are
+     * interchangeable: the cells of all robots except the fixed one are sorted
+     * in ascending order, so all permutations of those robots map to the same
+     * state.
+     *
+     * @param fixed
+     *            the index of the robot which keeps its identity, usually the
+     *            one which has to reach the target
+     */
+    public long canonical(long state, int fixed) {
+        for (int i = 1; i < numberRobots; i++) {
+            if (i == fixed) {
+                continue;
+            }
+            int cell = cell(state, i);
+            int j = i;
+            int prev = previous(j, fixed);
+            while (prev >= 0 && cell(state, prev) > cell) {
+                state = move(state, j, cell(state, prev));
+                j = prev;
+                prev = previous(j, fixed);
+            }
+            state = move(state, j, cell);
+        }
+        return state;
+    }
+
+    private static int previous(int index, int skip) {
+        return index - 1 == skip ? index - 2 : index - 1;
+    }
+
+    /**
+     * Applies a move between two (possibly canonical) states to a state which
+     * holds the same positions, but with the robots' actual identities.
+     *
+     * @param actual
+     *            the state before the move, with every robot in its own slot
+     * @param from
+     *            the state before the move, in any order of robots
+     * @param to
+     *            the state after the move, in any order of robots
+     * @return the state after the move, with every robot in its own slot
+     */
+    public long follow(long actual, long from, long to) {
+        int left = -1, entered = -1;
+        for (int i = 0; i < numberRobots; i++) {
+            int cell = cell(from, i);
+            if (!isOccupied(to, cell)) {
+                left = cell;
+            }
+            cell = cell(to, i);
+            if (!isOccupied(from, cell)) {
+                entered = cell;
+            }
+        }
+        if (left < 0) {
+            return actual;
+        }
+        for (int i = 0; i < numberRobots; i++) {
+            if (cell(actual, i) == left) {
+                return move(actual, i, entered);
+            }
+        }
+        throw new IllegalArgumentException("States do not match");
+    }
+
+    public long encode(Point[] configuration) {
+        checkLength(configuration.length);
+        long state = 0;
+        for (int i = 0; i < numberRobots; i++) {
+            state |= (long) board.cell(configuration[i]) << (i * bitsPerRobot);
+        }
+        return state;
+    }
+
+    public long encode(Robot[] robots) {
+        checkLength(robots.length);
+        long state = 0;
+        for (int i = 0; i < numberRobots; i++) {
+            state |= (long) board.cell(robots[i].getPosition()) << (i
+                    * bitsPerRobot);
+        }
+        return state;
+    }
+
+    public Point[] decode(long state) {
+        Point[] configuration = new Point[numberRobots];
+        for (int i = 0; i < numberRobots; i++) {
+            configuration[i] = board.point(cell(state, i));
+        }
+        return configuration;
+    }
+
+    /**
+     * Moves the given robots to the positions stored in the state.
+     */
+    public void decode(long state, Robot[] robots) {
+        checkLength(robots.length);
+        for (int i = 0; i < numberRobots; i++) {
+            robots[i].setPosition(board.point(cell(state, i)));
+        }
+    }
+
+    /**
+     * Scrambles the bits of a packed state, such that states differing in
+     * only a few low bits get spread over the whole range of ints.
+     */
+    public static int hash(long state) {
+        state *= 0x9E3779B97F4A7C15L;
+        return (int) (state ^ (state >>> 32));
+    }
+
+    private void checkLength(int length) {
+        if (length != numberRobots) {
+            throw new IllegalArgumentException("Expected " + numberRobots
+                    + " robots, but got " + length);
+        }
+    }
+}
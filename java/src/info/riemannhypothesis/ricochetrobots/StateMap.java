@@ -0,0 +1,152 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.Arrays;
+
+/**
+ * A map from packed robot configurations to <code>int</code> values,
+ * implemented as an open addressing hash table over primitive arrays just
+ * like {@link StateTable}.
+ *
+ * @author Markus Schepke
+ */
+public class StateMap {
+
+    private static final long EMPTY = 0L;
+
+    private final float       loadFactor;
+
+    private long[]            keys;
+    private int[]             values;
+    private int               mask;
+    private int               size;
+    private int               threshold;
+    private boolean           containsEmpty;
+    private int               emptyValue;
+
+    public StateMap() {
+        this(StateTable.DEFAULT_CAPACITY, StateTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param capacity
+     *            the number of states the map should hold without resizing
+     * @param loadFactor
+     *            the maximal ratio of used slots before the map is grown,
+     *            strictly between 0 and 1
+     */
+    public StateMap(int capacity, float loadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: "
+                    + capacity);
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("Illegal load factor: "
+                    + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(StateTable.tableSize(capacity, loadFactor));
+    }
+
+    /**
+     * @return the value stored for the state, or <code>missing</code> if
+     *         there is none
+     */
+    public int get(long key, int missing) {
+        if (key == EMPTY) {
+            return containsEmpty ? emptyValue : missing;
+        }
+        int slot = StateEncoding.hash(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != EMPTY) {
+            if (existing == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missing;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return containsEmpty;
+        }
+        int slot = StateEncoding.hash(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != EMPTY) {
+            if (existing == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Stores a value for the state, replacing any previous one.
+     */
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            if (!containsEmpty) {
+                containsEmpty = true;
+                size++;
+            }
+            emptyValue = value;
+            return;
+        }
+        int slot = StateEncoding.hash(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != EMPTY) {
+            if (existing == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all states, but keeps the allocated table for reuse.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        values = new int[tableSize];
+        mask = tableSize - 1;
+        threshold = Math.min(tableSize - 1, (int) (tableSize * loadFactor));
+    }
+
+    private void rehash(int tableSize) {
+        if (tableSize <= 0) {
+            throw new IllegalStateException("State map too large");
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(tableSize);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = StateEncoding.hash(key) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.Arrays;
+
+/**
+ * A set of packed robot configurations, implemented as an open addressing
+ * hash table over primitive <code>long</code> keys. Used by the solver as a
+ * transposition table to make sure every configuration is enqueued only once.
+ *
+ * @author Markus Schepke
+ */
+public class StateTable {
+
+    public static final int   DEFAULT_CAPACITY    = 1 << 16;
+    public static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    private static final long EMPTY               = 0L;
+
+    private final float       loadFactor;
+
+    private long[]            keys;
+    private int               mask;
+    private int               size;
+    private int               threshold;
+    private boolean           containsEmpty;
+
+    public StateTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    public StateTable(int capacity) {
+        this(capacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param capacity
+     *            the number of states the table should hold without resizing
+     * @param loadFactor
+     *            the maximal ratio of used slots before the table is grown,
+     *            strictly between 0 and 1
+     */
+    public StateTable(int capacity, float loadFactor) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Illegal capacity: "
+                    + capacity);
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("Illegal load factor: "
+                    + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(tableSize(capacity, loadFactor));
+    }
+
+    /**
+     * Adds a state to the table.
+     *
+     * @param key
+     *            the packed state
+     * @return true if the state was not contained in the table before
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int slot = StateEncoding.hash(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != EMPTY) {
+            if (existing == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size >= threshold) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return containsEmpty;
+        }
+        int slot = StateEncoding.hash(key) & mask;
+        long existing;
+        while ((existing = keys[slot]) != EMPTY) {
+            if (existing == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * Removes all states, but keeps the allocated table for reuse.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        mask = tableSize - 1;
+        threshold = Math.min(tableSize - 1, (int) (tableSize * loadFactor));
+    }
+
+    private void rehash(int tableSize) {
+        if (tableSize <= 0) {
+            throw new IllegalStateException("State table too large");
+        }
+        long[] old = keys;
+        allocate(tableSize);
+        for (long key : old) {
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = StateEncoding.hash(key) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+        }
+    }
+
+    static int tableSize(int capacity, float loadFactor) {
+        long needed = (long) Math.ceil(capacity / loadFactor) + 1;
+        int size = 2;
+        while (size < needed && size < (1 << 30)) {
+            size <<= 1;
+        }
+        return size;
+    }
+}
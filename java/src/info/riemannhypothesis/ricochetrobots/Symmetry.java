@@ -0,0 +1,232 @@
+package info.riemannhypothesis.ricochetrobots;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The eight rotations and reflections of a board, the symmetry group of the
+ * square. Each first swaps the axes if it transposes and then mirrors the
+ * columns and rows as needed; boards which are not square change their
+ * dimensions under the four which swap the axes. Rotations are clockwise.
+ *
+ * @author Markus Schepke
+ */
+public enum Symmetry {
+
+    IDENTITY(false, false, false), ROTATE_90(true, true, false), ROTATE_180(
+            false, true, true), ROTATE_270(true, false, true), FLIP_HORIZONTAL(
+            false, true, false), FLIP_VERTICAL(false, false, true), TRANSPOSE(
+            true, false, false), ANTI_TRANSPOSE(true, true, true);
+
+    private final boolean swap, flipX, flipY;
+    /** the image of each direction */
+    private final int[]   directions;
+    private Symmetry      inverse;
+
+    static {
+        for (Symmetry s : values()) {
+            for (Symmetry t : values()) {
+                if (undoes(t, s)) {
+                    s.inverse = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if t takes every cell of a board which is not square back
+     *         to where s took it from
+     */
+    private static boolean undoes(Symmetry t, Symmetry s) {
+        int width = 2, height = 3;
+        for (int cell = 0; cell < width * height; cell++) {
+            if (t.cell(s.cell(cell, width, height), s.width(width, height),
+                    s.height(width, height)) != cell) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Symmetry(boolean swap, boolean flipX, boolean flipY) {
+        this.swap = swap;
+        this.flipX = flipX;
+        this.flipY = flipY;
+        this.directions = new int[Board.DIRECTIONS.length];
+        for (int dir : Board.DIRECTIONS) {
+            int dx = Board.OFFSETS_DIR[dir][swap ? 1 : 0];
+            int dy = Board.OFFSETS_DIR[dir][swap ? 0 : 1];
+            dx = flipX ? -dx : dx;
+            dy = flipY ? -dy : dy;
+            for (int image : Board.DIRECTIONS) {
+                if (Board.OFFSETS_DIR[image][0] == dx
+                        && Board.OFFSETS_DIR[image][1] == dy) {
+                    directions[dir] = image;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the symmetry which undoes this one
+     */
+    public Symmetry inverse() {
+        return inverse;
+    }
+
+    /**
+     * @return the width of a board with the given dimensions after the
+     *         transformation
+     */
+    public int width(int width, int height) {
+        return swap ? height : width;
+    }
+
+    /**
+     * @return the height of a board with the given dimensions after the
+     *         transformation
+     */
+    public int height(int width, int height) {
+        return swap ? width : height;
+    }
+
+    /**
+     * @return the image of the point on a board of the given dimensions
+     */
+    public Point apply(Point p, int width, int height) {
+        int x = swap ? p.y : p.x, y = swap ? p.x : p.y;
+        int newWidth = width(width, height), newHeight = height(width, height);
+        return new Point(flipX ? newWidth - 1 - x : x, flipY ? newHeight - 1
+                - y : y);
+    }
+
+    /**
+     * @return the image of the cell, see {@link Board#cell(int, int)}, on a
+     *         board of the given dimensions
+     */
+    public int cell(int cell, int width, int height) {
+        int x = swap ? cell / width : cell % width;
+        int y = swap ? cell % width : cell / width;
+        int newWidth = width(width, height), newHeight = height(width, height);
+        return (flipY ? newHeight - 1 - y : y) * newWidth
+                + (flipX ? newWidth - 1 - x : x);
+    }
+
+    /**
+     * @return the image of the direction, see {@link Board#DIRECTIONS}
+     */
+    public int direction(int dir) {
+        return directions[dir];
+    }
+
+    /**
+     * @return the transformed board, whose slide table is mapped over from
+     *         the board's rather than computed again
+     */
+    public Board apply(Board board) {
+        int width = board.getWidth(), height = board.getHeight();
+        int cells = width * height;
+        byte[] tiles = new byte[cells];
+        int[] slides = new int[cells << 2];
+        int[] table = board.slideTable();
+        for (int cell = 0; cell < cells; cell++) {
+            int image = cell(cell, width, height);
+            tiles[image] = tile(board.tile(cell));
+            for (int dir : Board.DIRECTIONS) {
+                slides[(image << 2) | directions[dir]] = cell(
+                        table[(cell << 2) | dir], width, height);
+            }
+        }
+        Set<Point> targets = new HashSet<Point>();
+        for (Point target : board.getTargets()) {
+            targets.add(apply(target, width, height));
+        }
+        return new Board(width(width, height), height(width, height), tiles,
+                targets, slides);
+    }
+
+    /**
+     * @return the {@link Board#fingerprint()} of the transformed board,
+     *         computed without building it
+     */
+    public long fingerprint(Board board) {
+        int width = board.getWidth(), height = board.getHeight();
+        int newWidth = width(width, height), newHeight = height(width, height);
+        boolean[] targets = new boolean[width * height];
+        for (Point target : board.getTargets()) {
+            targets[board.cell(target)] = true;
+        }
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ newWidth) * 0x100000001b3L;
+        hash = (hash ^ newHeight) * 0x100000001b3L;
+        for (int image = 0; image < newWidth * newHeight; image++) {
+            int cell = inverse.cell(image, newWidth, newHeight);
+            int tile = tile(board.tile(cell)) | (targets[cell] ? 1 << 4 : 0);
+            hash = (hash ^ tile) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private byte tile(byte tile) {
+        int result = 0;
+        for (int dir : Board.DIRECTIONS) {
+            if ((tile & (1 << dir)) != 0) {
+                result |= 1 << directions[dir];
+            }
+        }
+        return (byte) result;
+    }
+
+    /**
+     * @return the puzzle as it is on the transformed board, with the robots
+     *         in the same order
+     */
+    public Puzzle apply(Puzzle puzzle, int width, int height) {
+        return new Puzzle(apply(puzzle.getPositions(), width, height), apply(
+                puzzle.getTarget(), width, height), puzzle.getTargetRobot());
+    }
+
+    /**
+     * @return the images of the points
+     */
+    public Point[] apply(Point[] points, int width, int height) {
+        Point[] result = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            result[i] = apply(points[i], width, height);
+        }
+        return result;
+    }
+
+    /**
+     * @return the configurations of a solution on the transformed board, or
+     *         null for null
+     */
+    public List<Point[]> apply(List<Point[]> solution, int width, int height) {
+        if (solution == null) {
+            return null;
+        }
+        List<Point[]> result = new ArrayList<Point[]>(solution.size());
+        for (Point[] configuration : solution) {
+            result.add(apply(configuration, width, height));
+        }
+        return result;
+    }
+
+    /**
+     * @return the moves, encoded as by {@link Solver#moveCodes()}, in the
+     *         directions of the transformed board, or null for null
+     */
+    public byte[] apply(byte[] moveCodes) {
+        if (moveCodes == null) {
+            return null;
+        }
+        byte[] result = new byte[moveCodes.length];
+        for (int i = 0; i < moveCodes.length; i++) {
+            result[i] = (byte) ((moveCodes[i] & ~3)
+                    | directions[moveCodes[i] & 3]);
+        }
+        return result;
+    }
+}